@@ -0,0 +1,76 @@
+package project;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+
+// Подготовка данных для бенчмарков: схема через миграции, недостающие заказы - генератором.
+// Набор только дополняется, поэтому прогоны с растущим размером переиспользуют предыдущие данные.
+final class BenchmarkDataset {
+    // На товар в среднем 100 заказов, на клиента - 10
+    private static final int ORDERS_PER_PRODUCT = 100;
+    private static final int ORDERS_PER_CUSTOMER = 10;
+
+    private final long maxProductId;
+    private final long maxCustomerId;
+    private final LocalDateTime endDate;
+
+    private BenchmarkDataset(long maxProductId, long maxCustomerId, LocalDateTime endDate) {
+        this.maxProductId = maxProductId;
+        this.maxCustomerId = maxCustomerId;
+        this.endDate = endDate;
+    }
+
+    long getMaxProductId() { return maxProductId; }
+    long getMaxCustomerId() { return maxCustomerId; }
+    // Конец интервала дат сгенерированных заказов: окна по датам отсчитываются от него, а не от текущего времени
+    LocalDateTime getEndDate() { return endDate; }
+
+    static BenchmarkDataset prepare(DatabaseManager dbManager, long orders) throws SQLException {
+        new DatabaseMigrator(dbManager).runMigrations();
+        LocalDateTime endDate = LocalDateTime.parse(dbManager.getProperty("db.generator.endDate", DataGenerator.DEFAULT_END_DATE));
+
+        long missing = orders - count(dbManager, "orders");
+        if (missing > 0) {
+            long products = Math.max(0, orders / ORDERS_PER_PRODUCT - count(dbManager, "products"));
+            long customers = Math.max(0, orders / ORDERS_PER_CUSTOMER - count(dbManager, "customers"));
+            int threads = Math.max(1, Math.min(dbManager.getIntProperty("db.generator.threads", 4), dbManager.getPoolMaxSize() - 1));
+            System.out.printf("Дополнение набора: товаров %d, клиентов %d, заказов %d%n", products, customers, missing);
+            new DataGenerator(dbManager,
+                    dbManager.getLongProperty("db.generator.seed", 42),
+                    threads,
+                    dbManager.getIntProperty("db.generator.years", 5),
+                    endDate,
+                    Double.parseDouble(dbManager.getProperty("db.generator.zipfExponent", "1.0")))
+                    .generate(products, (int) customers, missing);
+        }
+        return new BenchmarkDataset(maxId(dbManager, "products"), maxId(dbManager, "customers"), endDate);
+    }
+
+    // Остатки, чтобы оформление заказов не упиралось в нехватку товара
+    static void restock(DatabaseManager dbManager) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE products SET quantity = 1000000 WHERE quantity < 100000");
+        }
+        dbManager.clearEntityCaches();
+    }
+
+    private static long count(DatabaseManager dbManager, String table) throws SQLException {
+        return query(dbManager, "SELECT count(*) FROM " + table);
+    }
+
+    private static long maxId(DatabaseManager dbManager, String table) throws SQLException {
+        return query(dbManager, "SELECT coalesce(max(id), 0) FROM " + table);
+    }
+
+    private static long query(DatabaseManager dbManager, String sql) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
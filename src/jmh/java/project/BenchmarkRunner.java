@@ -0,0 +1,33 @@
+package project;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Прогон бенчмарков по нескольким значениям числа потоков; результаты каждого прогона
+// пишутся в target/jmh-<потоков>t.json. Настройки - системными свойствами:
+//   -Dbench.include=DatabaseManagerBenchmark  регулярное выражение имен бенчмарков
+//   -Dbench.threads=1,4,16                    числа потоков
+//   -Dbench.orders=100000,1000000             размеры набора (параметр orders)
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("bench.include", "project\\..*Benchmark");
+        String orders = System.getProperty("bench.orders");
+
+        for (String value : System.getProperty("bench.threads", "1,4,16").split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-" + threads + "t.json");
+            if (orders != null) {
+                options.param("orders", orders.split(","));
+            }
+            System.out.println("Потоков: " + threads);
+            new Runner(options.build()).run();
+        }
+    }
+}
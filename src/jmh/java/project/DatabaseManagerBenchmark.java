@@ -0,0 +1,122 @@
+package project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Операции DatabaseManager против локального PostgreSQL (db.* из application.properties).
+// Размер набора - параметр orders, число потоков - опция JMH -t (или BenchmarkRunner).
+// ID выбираются равномерно по всему набору: при наборе больше db.cache.*.maxSize
+// getProductById / getCustomerById измеряют смесь попаданий в кэш и запросов к БД.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DatabaseManagerBenchmark {
+    @Param({"100000", "1000000"})
+    public long orders;
+
+    private DatabaseManager dbManager;
+    private BenchmarkDataset dataset;
+    private Long newStatusId;
+    private String secondPageToken;
+
+    // Свой генератор у каждого потока, чтобы не мерить конкуренцию за Random
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dbManager = DatabaseManager.getInstance();
+        dataset = BenchmarkDataset.prepare(dbManager, orders);
+        newStatusId = dbManager.getStatusDictionary().idOf("Новый");
+        secondPageToken = dbManager.getRecentOrdersPage(null, 20).getNextPageToken();
+    }
+
+    @Setup(Level.Iteration)
+    public void restock() throws SQLException {
+        BenchmarkDataset.restock(dbManager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dbManager.closeConnection();
+    }
+
+    @Benchmark
+    public Product getProductById(ThreadRandom state) throws SQLException {
+        return dbManager.getProductById(productId(state));
+    }
+
+    @Benchmark
+    public Customer getCustomerById(ThreadRandom state) throws SQLException {
+        return dbManager.getCustomerById(1 + state.random.nextLong(dataset.getMaxCustomerId()));
+    }
+
+    @Benchmark
+    public Long createOrder(ThreadRandom state) throws SQLException {
+        int quantity = 1 + state.random.nextInt(5);
+        Order order = new Order(productId(state), 1 + state.random.nextLong(dataset.getMaxCustomerId()),
+                newStatusId, quantity, BigDecimal.valueOf(quantity * 100L));
+        return dbManager.createOrder(order);
+    }
+
+    @Benchmark
+    public Long placeOrder(ThreadRandom state) throws SQLException {
+        return dbManager.placeOrder(productId(state), 1 + state.random.nextLong(dataset.getMaxCustomerId()),
+                1 + state.random.nextInt(5));
+    }
+
+    @Benchmark
+    public boolean updateProductPrice(ThreadRandom state) throws SQLException {
+        return dbManager.updateProductPrice(productId(state), BigDecimal.valueOf(100 + state.random.nextInt(100_000), 2));
+    }
+
+    @Benchmark
+    public OrderPage getRecentOrdersFirstPage() throws SQLException {
+        return dbManager.getRecentOrdersPage(null, 20);
+    }
+
+    @Benchmark
+    public OrderPage getRecentOrdersNextPage() throws SQLException {
+        return dbManager.getRecentOrdersPage(secondPageToken, 20);
+    }
+
+    // Замена printPopularProducts без вывода в консоль
+    @Benchmark
+    public List<ProductSales> getPopularProducts() throws SQLException {
+        return dbManager.getPopularProducts(5);
+    }
+
+    // Последние сутки сгенерированного набора; заказы самих бенчмарков (текущая дата) в окно не попадают
+    @Benchmark
+    public OrderStats getOrderStatsLastDay() throws SQLException {
+        LocalDateTime end = dataset.getEndDate();
+        return dbManager.getOrderStats(end.minusDays(1), end);
+    }
+
+    private long productId(ThreadRandom state) {
+        return 1 + state.random.nextLong(dataset.getMaxProductId());
+    }
+}
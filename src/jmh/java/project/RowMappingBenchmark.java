@@ -0,0 +1,162 @@
+package project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость отображения строк на больших выборках: прежний способ (SELECT *, поиск столбца
+// по имени в каждой строке, двойной getTimestamp) против RowMapping (только нужные столбцы,
+// номера столбцов найдены один раз). Одна операция - проход по rows строкам,
+// время на строку = результат / rows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RowMappingBenchmark {
+    private static final int FETCH_SIZE = 1000;
+    private static final String ORDER_FEED_SQL = """
+            SELECT o.id, o.product_id, o.customer_id, o.status_id,
+                   o.quantity, o.total_amount, o.order_date,
+                   p.name as product_name,
+                   c.first_name || ' ' || c.last_name as customer_name
+            FROM orders o
+            JOIN products p ON o.product_id = p.id
+            JOIN customers c ON o.customer_id = c.id
+            ORDER BY o.id
+            LIMIT ?
+            """;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private DatabaseManager dbManager;
+    private String productsSql;
+    private String customersSql;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dbManager = DatabaseManager.getInstance();
+        // Заказов в наборе rows * 10, клиентов - rows; товаров в 10 раз меньше rows,
+        // поэтому выборка товаров короче остальных (время на строку считать по числу товаров)
+        BenchmarkDataset.prepare(dbManager, rows * 10L);
+        productsSql = "SELECT " + RowMapping.PRODUCT.columns() + " FROM products ORDER BY id LIMIT ?";
+        customersSql = "SELECT " + RowMapping.CUSTOMER.columns() + " FROM customers ORDER BY id LIMIT ?";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dbManager.closeConnection();
+    }
+
+    @Benchmark
+    public void productsByLabel(Blackhole blackhole) throws SQLException {
+        scan("SELECT * FROM products ORDER BY id LIMIT ?", blackhole, rs -> {
+            Product product = new Product();
+            product.setId(rs.getLong("id"));
+            product.setName(rs.getString("name"));
+            product.setDescription(rs.getString("description"));
+            product.setPrice(rs.getBigDecimal("price"));
+            product.setQuantity(rs.getInt("quantity"));
+            product.setCategory(rs.getString("category"));
+            product.setCreatedAt(rs.getTimestamp("created_at") != null ?
+                    rs.getTimestamp("created_at").toLocalDateTime() : null);
+            return product;
+        });
+    }
+
+    @Benchmark
+    public void productsByIndex(Blackhole blackhole) throws SQLException {
+        scan(productsSql, blackhole, RowMapping.PRODUCT);
+    }
+
+    @Benchmark
+    public void customersByLabel(Blackhole blackhole) throws SQLException {
+        scan("SELECT * FROM customers ORDER BY id LIMIT ?", blackhole, rs -> {
+            Customer customer = new Customer();
+            customer.setId(rs.getLong("id"));
+            customer.setFirstName(rs.getString("first_name"));
+            customer.setLastName(rs.getString("last_name"));
+            customer.setPhone(rs.getString("phone"));
+            customer.setEmail(rs.getString("email"));
+            customer.setCreatedAt(rs.getTimestamp("created_at") != null ?
+                    rs.getTimestamp("created_at").toLocalDateTime() : null);
+            return customer;
+        });
+    }
+
+    @Benchmark
+    public void customersByIndex(Blackhole blackhole) throws SQLException {
+        scan(customersSql, blackhole, RowMapping.CUSTOMER);
+    }
+
+    @Benchmark
+    public void ordersByLabel(Blackhole blackhole) throws SQLException {
+        scan(ORDER_FEED_SQL, blackhole, rs -> {
+            Order order = new Order();
+            order.setId(rs.getLong("id"));
+            order.setProductId(rs.getLong("product_id"));
+            order.setCustomerId(rs.getLong("customer_id"));
+            order.setStatusId(rs.getLong("status_id"));
+            order.setQuantity(rs.getInt("quantity"));
+            order.setTotalAmount(rs.getBigDecimal("total_amount"));
+            order.setOrderDate(rs.getTimestamp("order_date").toLocalDateTime());
+            order.setProductName(rs.getString("product_name"));
+            order.setCustomerName(rs.getString("customer_name"));
+            return order;
+        });
+    }
+
+    @Benchmark
+    public void ordersByIndex(Blackhole blackhole) throws SQLException {
+        scan(ORDER_FEED_SQL, blackhole, RowMapping.ORDER_FEED);
+    }
+
+    private <T> void scan(String sql, Blackhole blackhole, RowMapping<T> mapping) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = prepare(conn, sql);
+             ResultSet rs = stmt.executeQuery()) {
+            RowMapping.Mapper<T> mapper = mapping.forQuery(sql, rs);
+            while (rs.next()) {
+                blackhole.consume(mapper.map(rs));
+            }
+        }
+    }
+
+    private <T> void scan(String sql, Blackhole blackhole, RowMapping.Mapper<T> mapper) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = prepare(conn, sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(mapper.map(rs));
+            }
+        }
+    }
+
+    // Курсор с fetchSize, как в streamQuery; autocommit пул восстанавливает при возврате подключения
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        conn.setAutoCommit(false);
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setFetchSize(FETCH_SIZE);
+        stmt.setInt(1, rows);
+        return stmt;
+    }
+}
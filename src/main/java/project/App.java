@@ -3,6 +3,11 @@ package project;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public class App {
     private final DatabaseManager dbManager;
@@ -17,8 +22,165 @@ public class App {
         System.out.println("Запуск системы управления заказами...");
         System.out.println("==========================================");
 
+        // Проверка кэша сущностей не обращается к БД: cache-check
+        if (args.length > 0 && args[0].equals("cache-check")) {
+            runCacheCheck();
+            return;
+        }
+
         App app = new App();
-        app.run();
+        if (args.length > 0 && args[0].equals("ledger-bench")) {
+            app.runLedgerBenchmark(args);
+        } else if (args.length > 0 && args[0].equals("async-bench")) {
+            app.runAsyncBenchmark(args);
+        } else if (args.length > 0 && args[0].equals("rebuild-summaries")) {
+            app.rebuildSummaries();
+        } else if (args.length > 0 && args[0].equals("repair-indexes")) {
+            app.repairIndexes();
+        } else if (args.length > 0 && args[0].equals("generate")) {
+            app.generateData(args);
+        } else if (args.length > 0 && args[0].equals("load")) {
+            app.runLoadTest(args);
+        } else if (args.length > 0 && args[0].equals("analytics")) {
+            app.runAnalytics(args);
+        } else {
+            app.run();
+        }
+    }
+
+    private static void runCacheCheck() {
+        boolean passed;
+        try {
+            passed = new EntityCacheCheck().run();
+        } catch (Exception e) {
+            System.err.println("Ошибка проверки кэша: " + e.getMessage());
+            e.printStackTrace();
+            passed = false;
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // Сравнение списания остатка в строке products и журнала остатков: ledger-bench [потоков...]
+    public void runLedgerBenchmark(String[] args) {
+        int[] threads = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 8, 32};
+        try {
+            migrator.runMigrations();
+            new LedgerBenchmark(dbManager).run(threads);
+        } catch (Exception e) {
+            System.err.println("Ошибка бенчмарка: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    // Сравнение блокирующего и асинхронного доступа: async-bench [в полете...]
+    public void runAsyncBenchmark(String[] args) {
+        int[] levels = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1000, 5000, 10000};
+        try {
+            migrator.runMigrations();
+            new AsyncBenchmark(dbManager).run(levels);
+        } catch (Exception e) {
+            System.err.println("Ошибка бенчмарка: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    // Пересчет сводных таблиц по заказам: rebuild-summaries
+    public void rebuildSummaries() {
+        try {
+            migrator.runMigrations();
+            long start = System.currentTimeMillis();
+            dbManager.rebuildOrderSummaries();
+            System.out.println("Сводки заказов пересчитаны за " + (System.currentTimeMillis() - start) + " мс");
+        } catch (SQLException e) {
+            System.err.println("Ошибка пересчета сводок: " + e.getMessage());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    // Перестройка невалидных индексов без блокировки записи: repair-indexes
+    public void repairIndexes() {
+        try {
+            migrator.repairInvalidIndexes();
+        } catch (SQLException e) {
+            System.err.println("Ошибка перестройки индексов: " + e.getMessage());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    // Синтетические данные: generate [заказов] [товаров] [клиентов], остальное - db.generator.*
+    public void generateData(String[] args) {
+        long orders = args.length > 1 ? Long.parseLong(args[1]) : dbManager.getLongProperty("db.generator.orders", 1_000_000);
+        long products = args.length > 2 ? Long.parseLong(args[2]) : dbManager.getLongProperty("db.generator.products", 10_000);
+        int customers = args.length > 3 ? Integer.parseInt(args[3]) : dbManager.getIntProperty("db.generator.customers", 100_000);
+        // Одно подключение пула остается свободным для служебных запросов
+        int threads = Math.max(1, Math.min(dbManager.getIntProperty("db.generator.threads", 4), dbManager.getPoolMaxSize() - 1));
+        try {
+            migrator.runMigrations();
+            System.out.printf("Генерация: товаров %d, клиентов %d, заказов %d, потоков %d%n", products, customers, orders, threads);
+            new DataGenerator(dbManager,
+                    dbManager.getLongProperty("db.generator.seed", 42),
+                    threads,
+                    dbManager.getIntProperty("db.generator.years", 5),
+                    LocalDateTime.parse(dbManager.getProperty("db.generator.endDate", DataGenerator.DEFAULT_END_DATE)),
+                    Double.parseDouble(dbManager.getProperty("db.generator.zipfExponent", "1.0")))
+                    .generate(products, customers, orders);
+        } catch (SQLException e) {
+            System.err.println("Ошибка генерации данных: " + e.getMessage());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    // Нагрузочный тест: load [closed|open] [потоков] [секунд] [оп/с], остальное - db.load.*
+    public void runLoadTest(String[] args) {
+        LoadTest.Mode mode = LoadTest.Mode.valueOf(
+                (args.length > 1 ? args[1] : dbManager.getProperty("db.load.mode", "closed")).toUpperCase());
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : dbManager.getIntProperty("db.load.threads", 8);
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : dbManager.getIntProperty("db.load.durationSec", 60);
+        double rate = args.length > 4 ? Double.parseDouble(args[4])
+                : Double.parseDouble(dbManager.getProperty("db.load.rate", "1000"));
+        try {
+            migrator.runMigrations();
+            if (dbManager.getBooleanProperty("db.inventoryLedger.enabled", false)) {
+                dbManager.enableInventoryLedger();
+            }
+            new LoadTest(dbManager, mode, threads, seconds, dbManager.getIntProperty("db.load.warmupSec", 10), rate,
+                    dbManager.getProperty("db.load.mix",
+                            "getProductById:40,getCustomerById:30,recentOrders:15,createOrder:10,updateProductQuantity:5"))
+                    .run();
+        } catch (SQLException e) {
+            System.err.println("Ошибка нагрузочного теста: " + e.getMessage());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    // Аналитика по снимку заказов в памяти: analytics [клиентов в топе]
+    public void runAnalytics(String[] args) {
+        int topCustomers = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        try {
+            migrator.runMigrations();
+            long start = System.currentTimeMillis();
+            OrderSnapshot snapshot = dbManager.enableOrderSnapshot();
+            System.out.printf("Снимок заказов загружен за %d мс: %s%n", System.currentTimeMillis() - start, snapshot);
+            printSnapshotAnalytics(snapshot, topCustomers);
+        } catch (SQLException e) {
+            System.err.println("Ошибка аналитики: " + e.getMessage());
+        } finally {
+            dbManager.closeConnection();
+        }
     }
 
     public void run() {
@@ -39,6 +201,16 @@ public class App {
             // Дополнительная проверка данных в таблицах
             migrator.checkData();
 
+            if (dbManager.getBooleanProperty("db.inventoryLedger.enabled", false)) {
+                dbManager.enableInventoryLedger();
+                System.out.println("Резервирование остатков в памяти включено");
+            }
+
+            if (dbManager.getBooleanProperty("db.snapshot.enabled", false)) {
+                dbManager.enableOrderSnapshot();
+                System.out.println("Снимок заказов в памяти включен");
+            }
+
             // Демонстрация всех CRUD операций в транзакции
             demonstrateAllOperations();
 
@@ -133,15 +305,8 @@ public class App {
             }
         }
 
-        // Создаем новый заказ (status_id = 1 - "Новый")
-        Order newOrder = new Order(
-                productId,
-                customerId,
-                1L, // Новый заказ
-                1,
-                new BigDecimal("55000.00")
-        );
-        Long orderId = dbManager.createOrder(newOrder);
+        // Оформляем заказ: товар списывается со склада, сумма считается в БД (статус "Новый")
+        Long orderId = dbManager.placeOrder(productId, customerId, 1);
         System.out.println("Создан новый заказ с ID: " + orderId);
     }
 
@@ -249,32 +414,66 @@ public class App {
 
         // Статистика по клиентам
         printCustomerStatistics();
-    }
 
-    private void printOrderStatistics() throws SQLException {
-        String sql = """
-            SELECT 
-                COUNT(*) as total_orders,
-                SUM(total_amount) as total_revenue,
-                AVG(total_amount) as avg_order_value,
-                MIN(order_date) as first_order,
-                MAX(order_date) as last_order
-            FROM orders
-            """;
+        if (dbManager.getBooleanProperty("db.snapshot.enabled", false)) {
+            printSnapshotAnalytics(dbManager.enableOrderSnapshot(), 5);
+        }
+    }
 
-        try (var conn = dbManager.getConnection();
-             var stmt = conn.createStatement();
-             var rs = stmt.executeQuery(sql)) {
+    // Разрезы выручки по снимку в памяти; каждый запрос - без обращения к БД
+    private void printSnapshotAnalytics(OrderSnapshot snapshot, int topCustomers) throws SQLException {
+        long start = System.nanoTime();
+        OrderTotals total = snapshot.totals(null, null, null);
+        LocalDateTime now = LocalDateTime.now();
+        OrderTotals lastMonth = snapshot.totals(now.minusDays(30), null, null);
+        List<OrderTotals> byCategory = snapshot.aggregate(OrderSnapshot.GroupBy.CATEGORY, null, null, null, 0);
+        List<OrderTotals> byStatus = snapshot.aggregate(OrderSnapshot.GroupBy.STATUS, null, null, null, 0);
+        List<OrderTotals> byCustomer = snapshot.aggregate(OrderSnapshot.GroupBy.CUSTOMER, null, null, null, topCustomers);
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+
+        System.out.println("\n АНАЛИТИКА ПО СНИМКУ ЗАКАЗОВ:");
+        System.out.printf("   Всего: %d заказов на %.2f руб, средний чек %.2f руб%n",
+                total.getOrderCount(), total.getRevenue(), total.getAverageOrderValue());
+        System.out.printf("   За 30 дней: %d заказов на %.2f руб%n", lastMonth.getOrderCount(), lastMonth.getRevenue());
+
+        System.out.println("\n   Выручка по категориям:");
+        for (OrderTotals group : byCategory) {
+            System.out.printf("   %-25s %10d заказов %15.2f руб%n", group.getName(), group.getOrderCount(), group.getRevenue());
+        }
+        System.out.println("\n   Выручка по статусам:");
+        for (OrderTotals group : byStatus) {
+            System.out.printf("   %-25s %10d заказов %15.2f руб%n", group.getName(), group.getOrderCount(), group.getRevenue());
+        }
 
-            if (rs.next()) {
-                System.out.println("\n СТАТИСТИКА ПО ЗАКАЗАМ:");
-                System.out.printf("   Всего заказов: %d%n", rs.getInt("total_orders"));
-                System.out.printf("   Общая выручка: %.2f руб%n", rs.getBigDecimal("total_revenue"));
-                System.out.printf("   Средний чек: %.2f руб%n", rs.getBigDecimal("avg_order_value"));
-                System.out.printf("   Первый заказ: %s%n", rs.getTimestamp("first_order"));
-                System.out.printf("   Последний заказ: %s%n", rs.getTimestamp("last_order"));
-            }
+        List<Long> customerIds = new ArrayList<>();
+        for (OrderTotals group : byCustomer) {
+            customerIds.add(group.getKey());
+        }
+        Map<Long, Customer> customers = dbManager.getCustomersByIds(customerIds);
+        System.out.println("\n   Клиенты с наибольшей выручкой:");
+        for (OrderTotals group : byCustomer) {
+            Customer customer = customers.get(group.getKey());
+            System.out.printf("   %-25s %10d заказов %15.2f руб%n",
+                    customer != null ? customer.getFullName() : "ID " + group.getKey(),
+                    group.getOrderCount(), group.getRevenue());
         }
+        System.out.printf("%n   Разрезы посчитаны за %.1f мс по %d заказам%n", millis, snapshot.getRowCount());
+    }
+
+    private void printOrderStatistics() throws SQLException {
+        // Итоги берутся из посуточных сверток, таблица orders не сканируется
+        OrderStats stats = dbManager.getOrderStats();
+        LocalDateTime now = LocalDateTime.now();
+        OrderStats lastDay = dbManager.getOrderStats(now.minusDays(1), now);
+
+        System.out.println("\n СТАТИСТИКА ПО ЗАКАЗАМ:");
+        System.out.printf("   Всего заказов: %d%n", stats.getOrderCount());
+        System.out.printf("   Общая выручка: %.2f руб%n", stats.getRevenue());
+        System.out.printf("   Средний чек: %.2f руб%n", stats.getAverageOrderValue());
+        System.out.printf("   Первый заказ: %s%n", stats.getFirstOrder());
+        System.out.printf("   Последний заказ: %s%n", stats.getLastOrder());
+        System.out.printf("   За последние 24 часа: %d заказов на %.2f руб%n",
+                lastDay.getOrderCount(), lastDay.getRevenue());
     }
 
     private void printCustomerStatistics() throws SQLException {
@@ -0,0 +1,130 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Сравнение пропускной способности: блокирующие вызовы на пуле платформенных потоков
+// против асинхронного фасада на виртуальных потоках при N одновременных запросах.
+// Запуск: mvn exec:java -Dexec.args="async-bench 1000 5000 10000"
+public class AsyncBenchmark {
+    private static final int PLATFORM_THREADS = 200;
+    private static final int ROUNDS = 3;
+
+    private final DatabaseManager dbManager;
+
+    public AsyncBenchmark(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    public void run(int[] inFlightLevels) throws Exception {
+        // Запрос, который всегда идет в БД (лента заказов не кэшируется)
+        long maxProductId = Math.max(1, countProducts());
+
+        System.out.println("\n СРАВНЕНИЕ: платформенные потоки (" + PLATFORM_THREADS + ") и виртуальные потоки");
+        System.out.printf("%-10s | %-22s | %-22s%n", "В полете", "Блокирующий, зап/с", "Асинхронный, зап/с");
+
+        try (AsyncDatabaseManager async = new AsyncDatabaseManager(dbManager)) {
+            // Прогрев
+            runAsync(async, 1000, maxProductId);
+            runBlocking(1000, maxProductId);
+
+            for (int inFlight : inFlightLevels) {
+                Result blocking = null;
+                Result asynchronous = null;
+                for (int round = 0; round < ROUNDS; round++) {
+                    blocking = best(blocking, runBlocking(inFlight, maxProductId));
+                    asynchronous = best(asynchronous, runAsync(async, inFlight, maxProductId));
+                }
+                System.out.printf("%-10d | %-22s | %-22s%n", inFlight, blocking, asynchronous);
+            }
+        }
+    }
+
+    private Result runBlocking(int inFlight, long maxProductId) throws InterruptedException {
+        ExecutorService platform = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        LongAdder errors = new LongAdder();
+        List<Callable<Object>> tasks = new ArrayList<>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            tasks.add(() -> {
+                try {
+                    return query(maxProductId);
+                } catch (Exception e) {
+                    errors.increment();
+                    return null;
+                }
+            });
+        }
+        long start = System.nanoTime();
+        List<Future<Object>> futures = platform.invokeAll(tasks);
+        long elapsed = System.nanoTime() - start;
+        platform.shutdown();
+        return new Result(futures.size(), errors.sum(), elapsed);
+    }
+
+    private Result runAsync(AsyncDatabaseManager async, int inFlight, long maxProductId) {
+        LongAdder errors = new LongAdder();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[inFlight];
+        long start = System.nanoTime();
+        for (int i = 0; i < inFlight; i++) {
+            futures[i] = async.getRecentOrdersPage(null, 5)
+                    .thenCompose(page -> async.getProductsByIds(List.of(randomId(maxProductId))))
+                    .exceptionally(e -> {
+                        errors.increment();
+                        return null;
+                    });
+        }
+        CompletableFuture.allOf(futures).join();
+        return new Result(inFlight, errors.sum(), System.nanoTime() - start);
+    }
+
+    private Object query(long maxProductId) throws Exception {
+        dbManager.getRecentOrdersPage(null, 5);
+        return dbManager.getProductsByIds(List.of(randomId(maxProductId)));
+    }
+
+    private static long randomId(long maxId) {
+        return ThreadLocalRandom.current().nextLong(1, maxId + 1);
+    }
+
+    private long countProducts() throws Exception {
+        try (var conn = dbManager.getConnection();
+             var stmt = conn.createStatement();
+             var rs = stmt.executeQuery("SELECT coalesce(max(id), 0) FROM products")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Result best(Result current, Result candidate) {
+        return current == null || candidate.throughput() > current.throughput() ? candidate : current;
+    }
+
+    private static final class Result {
+        private final long requests;
+        private final long errors;
+        private final long elapsedNanos;
+
+        private Result(long requests, long errors, long elapsedNanos) {
+            this.requests = requests;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        private double throughput() {
+            return (requests - errors) / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return errors == 0
+                    ? String.format("%.0f", throughput())
+                    : String.format("%.0f (ошибок %d)", throughput(), errors);
+        }
+    }
+}
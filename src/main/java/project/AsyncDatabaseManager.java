@@ -0,0 +1,178 @@
+package project;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Асинхронный фасад над DatabaseManager: каждая операция выполняется в своем виртуальном потоке,
+// вызывающий поток не блокируется на JDBC. Число одновременно выполняемых операций ограничено
+// размером пула подключений за вычетом запаса для фоновых потоков (db.async.reservedConnections) -
+// остальные операции ждут разрешения, а не подключения.
+public class AsyncDatabaseManager implements AutoCloseable {
+    private final DatabaseManager dbManager;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    // Писатель OrderIngestionQueue, выгрузка InventoryLedger, обслуживание секций и обновление OrderSnapshot
+    // берут подключения из того же пула: без запаса они ждали бы в очереди за всеми асинхронными операциями
+    public AsyncDatabaseManager(DatabaseManager dbManager) {
+        this(dbManager, Math.max(1, dbManager.getPoolMaxSize() - dbManager.getIntProperty("db.async.reservedConnections", 4)));
+    }
+
+    public AsyncDatabaseManager(DatabaseManager dbManager, int maxConcurrency) {
+        this.dbManager = dbManager;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    // Продукты
+    public CompletableFuture<Long> createProduct(Product product) {
+        return submit(() -> dbManager.createProduct(product));
+    }
+
+    public CompletableFuture<Product> getProductById(Long id) {
+        return submit(() -> dbManager.getProductById(id));
+    }
+
+    public CompletableFuture<Map<Long, Product>> getProductsByIds(Collection<Long> ids) {
+        return submit(() -> dbManager.getProductsByIds(ids));
+    }
+
+    public CompletableFuture<BatchInsertResult> createProducts(List<Product> products) {
+        return submit(() -> dbManager.createProducts(products));
+    }
+
+    public CompletableFuture<Boolean> updateProductPrice(Long productId, BigDecimal newPrice) {
+        return submit(() -> dbManager.updateProductPrice(productId, newPrice));
+    }
+
+    public CompletableFuture<Boolean> updateProductQuantity(Long productId, Integer newQuantity) {
+        return submit(() -> dbManager.updateProductQuantity(productId, newQuantity));
+    }
+
+    public CompletableFuture<Void> forEachProduct(Consumer<Product> action) {
+        return run(() -> dbManager.forEachProduct(action));
+    }
+
+    // Клиенты
+    public CompletableFuture<Long> createCustomer(Customer customer) {
+        return submit(() -> dbManager.createCustomer(customer));
+    }
+
+    public CompletableFuture<Customer> getCustomerById(Long id) {
+        return submit(() -> dbManager.getCustomerById(id));
+    }
+
+    public CompletableFuture<Map<Long, Customer>> getCustomersByIds(Collection<Long> ids) {
+        return submit(() -> dbManager.getCustomersByIds(ids));
+    }
+
+    public CompletableFuture<BatchInsertResult> createCustomers(List<Customer> customers) {
+        return submit(() -> dbManager.createCustomers(customers));
+    }
+
+    public CompletableFuture<Void> forEachCustomer(Consumer<Customer> action) {
+        return run(() -> dbManager.forEachCustomer(action));
+    }
+
+    // Заказы
+    public CompletableFuture<Long> createOrder(Order order) {
+        return submit(() -> dbManager.createOrder(order));
+    }
+
+    public CompletableFuture<Long> placeOrder(Long productId, Long customerId, int quantity) {
+        return submit(() -> dbManager.placeOrder(productId, customerId, quantity));
+    }
+
+    public CompletableFuture<BatchInsertResult> createOrders(List<Order> orders) {
+        return submit(() -> dbManager.createOrders(orders));
+    }
+
+    public CompletableFuture<Boolean> deleteOrder(Long id) {
+        return submit(() -> dbManager.deleteOrder(id));
+    }
+
+    public CompletableFuture<OrderPage> getRecentOrdersPage(String pageToken, int pageSize) {
+        return submit(() -> dbManager.getRecentOrdersPage(pageToken, pageSize));
+    }
+
+    public CompletableFuture<OrderStats> getOrderStats(LocalDateTime from, LocalDateTime to) {
+        return submit(() -> dbManager.getOrderStats(from, to));
+    }
+
+    public CompletableFuture<List<ProductSales>> getPopularProducts(int limit) {
+        return submit(() -> dbManager.getPopularProducts(limit));
+    }
+
+    // Отчеты
+    public CompletableFuture<Void> printAllProducts() {
+        return run(dbManager::printAllProducts);
+    }
+
+    public CompletableFuture<Void> printAllCustomers() {
+        return run(dbManager::printAllCustomers);
+    }
+
+    public CompletableFuture<Void> printRecentOrders(int limit) {
+        return run(() -> dbManager.printRecentOrders(limit));
+    }
+
+    public CompletableFuture<Void> printPopularProducts() {
+        return run(dbManager::printPopularProducts);
+    }
+
+    // Операций, ожидающих свободного подключения
+    public int getQueuedOperations() {
+        return permits.getQueueLength();
+    }
+
+    private CompletableFuture<Void> run(SqlRunnable action) {
+        return submit(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface SqlRunnable {
+        void run() throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        });
+        return future;
+    }
+
+    // Дожидается завершения уже запущенных операций
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
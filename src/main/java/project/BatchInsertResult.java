@@ -0,0 +1,40 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Результат пакетной вставки: ID в порядке входного списка и ошибки по отдельным строкам
+public class BatchInsertResult {
+    private final List<Long> ids;
+    private final Map<Integer, String> failures = new TreeMap<>();
+
+    public BatchInsertResult(int size) {
+        this.ids = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    void setId(int index, Long id) {
+        ids.set(index, id);
+    }
+
+    void addFailure(int index, String message) {
+        failures.put(index, message);
+    }
+
+    // ID вставленных строк; null на позициях строк, которые не удалось вставить
+    public List<Long> getIds() { return Collections.unmodifiableList(ids); }
+
+    // Индекс строки во входном списке -> текст ошибки
+    public Map<Integer, String> getFailures() { return Collections.unmodifiableMap(failures); }
+
+    public boolean hasFailures() { return !failures.isEmpty(); }
+
+    public int getInsertedCount() { return ids.size() - failures.size(); }
+
+    @Override
+    public String toString() {
+        return String.format("BatchInsertResult[Inserted: %d, Failed: %d]", getInsertedCount(), failures.size());
+    }
+}
@@ -0,0 +1,322 @@
+package project;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Массовая загрузка CSV/TSV в products, customers и orders через COPY FROM STDIN.
+// Поток читается фиксированным буфером, поэтому память не зависит от размера входных данных.
+public class BulkLoader {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_REPORTED_REJECTS = 100;
+
+    public enum Format { CSV, TSV }
+
+    public enum Table {
+        PRODUCTS("products", "name, description, price, quantity, category", "created_at", """
+                CASE
+                    WHEN name IS NULL THEN 'не указано название'
+                    WHEN price IS NULL OR price < 0 THEN 'некорректная цена'
+                    WHEN quantity IS NULL OR quantity < 0 THEN 'некорректное количество'
+                END
+                """),
+        CUSTOMERS("customers", "first_name, last_name, phone, email", "created_at", """
+                CASE
+                    WHEN first_name IS NULL OR last_name IS NULL THEN 'не указано имя или фамилия'
+                    WHEN email IS NOT NULL AND EXISTS (SELECT 1 FROM customers c WHERE c.email = s.email)
+                        THEN 'email ' || email || ' уже существует'
+                    WHEN email IS NOT NULL AND EXISTS (SELECT 1 FROM %1$s d WHERE d.email = s.email AND d.stage_row < s.stage_row)
+                        THEN 'email ' || email || ' повторяется во входных данных'
+                END
+                """),
+        // Заказы всегда загружаются через staging; пустая order_date заменяется текущим временем
+        ORDERS("orders", "product_id, customer_id, status_id, quantity, total_amount, order_date", "", """
+                CASE
+                    WHEN product_id IS NULL OR NOT EXISTS (SELECT 1 FROM products p WHERE p.id = s.product_id)
+                        THEN 'товар ' || coalesce(product_id::text, 'NULL') || ' не найден'
+                    WHEN customer_id IS NULL OR NOT EXISTS (SELECT 1 FROM customers c WHERE c.id = s.customer_id)
+                        THEN 'клиент ' || coalesce(customer_id::text, 'NULL') || ' не найден'
+                    WHEN status_id IS NULL OR NOT EXISTS (SELECT 1 FROM order_status os WHERE os.id = s.status_id)
+                        THEN 'статус ' || coalesce(status_id::text, 'NULL') || ' не найден'
+                    WHEN quantity IS NULL OR quantity <= 0 THEN 'некорректное количество'
+                    WHEN total_amount IS NULL OR total_amount < 0 THEN 'некорректная сумма'
+                END
+                """);
+
+        private final String tableName;
+        private final String defaultColumns;
+        // Колонки, которые можно указать в Options.setColumns: по умолчанию и дополнительные
+        private final Set<String> allowedColumns = new LinkedHashSet<>();
+        private final String rejectReasonSql;
+
+        Table(String tableName, String defaultColumns, String optionalColumns, String rejectReasonSql) {
+            this.tableName = tableName;
+            this.defaultColumns = defaultColumns;
+            this.rejectReasonSql = rejectReasonSql;
+            for (String column : (defaultColumns + "," + optionalColumns).split(",")) {
+                if (!column.isBlank()) {
+                    allowedColumns.add(column.trim());
+                }
+            }
+        }
+
+        public String getTableName() { return tableName; }
+        public String getDefaultColumns() { return defaultColumns; }
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(Table table, long bytesRead, long linesRead);
+    }
+
+    // Параметры загрузки
+    public static class Options {
+        private Format format = Format.CSV;
+        private boolean header = true;
+        private String columns;
+        private boolean staging;
+        private ProgressListener progressListener;
+
+        public Format getFormat() { return format; }
+        public Options setFormat(Format format) { this.format = format; return this; }
+
+        public boolean isHeader() { return header; }
+        public Options setHeader(boolean header) { this.header = header; return this; }
+
+        // Список колонок в порядке полей файла; null - колонки таблицы по умолчанию
+        public String getColumns() { return columns; }
+        public Options setColumns(String columns) { this.columns = columns; return this; }
+
+        // Загрузка через временную таблицу: строки с нарушениями FK/UNIQUE/CHECK отбраковываются
+        public boolean isStaging() { return staging; }
+        public Options setStaging(boolean staging) { this.staging = staging; return this; }
+
+        public ProgressListener getProgressListener() { return progressListener; }
+        public Options setProgressListener(ProgressListener progressListener) { this.progressListener = progressListener; return this; }
+    }
+
+    private final DatabaseManager dbManager;
+
+    public BulkLoader(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    public Result load(Table table, Path file, Options options) throws SQLException, IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            return load(table, input, options);
+        }
+    }
+
+    public Result load(Table table, InputStream input, Options options) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        String columns = options.getColumns() != null ? checkColumns(table, options.getColumns()) : table.getDefaultColumns();
+        // Заголовок TSV (формат text) пропускаем сами: HEADER для него есть только в PostgreSQL 15+
+        boolean skipHeader = options.isHeader() && options.getFormat() == Format.TSV;
+        ProgressInputStream progress = new ProgressInputStream(input, table, options.getProgressListener(), skipHeader);
+
+        Result result;
+        try (Connection conn = dbManager.getConnection()) {
+            CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+
+            // Заказы всегда идут через временную таблицу: вставка в orders обновляет сводки
+            if (options.isStaging() || table == Table.ORDERS) {
+                result = loadThroughStaging(conn, copyManager, table, columns, progress, options);
+            } else {
+                long copied = copyManager.copyIn(copySql(table.getTableName(), columns, options), progress, COPY_BUFFER_SIZE);
+                result = new Result(table, copied, copied, 0, Collections.emptyList());
+            }
+        }
+        if (table != Table.ORDERS) {
+            // Новые ID могли числиться в кэше как отсутствующие
+            dbManager.clearEntityCaches();
+        }
+        progress.report();
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private Result loadThroughStaging(Connection conn, CopyManager copyManager, Table table, String columns,
+                                      ProgressInputStream input, Options options) throws SQLException, IOException {
+        String stage = "bulk_stage_" + table.getTableName();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            // CREATE TABLE AS не копирует NOT NULL/CHECK/UNIQUE - нарушения не прерывают COPY
+            stmt.execute("CREATE TEMP TABLE " + stage + " ON COMMIT DROP AS SELECT * FROM " +
+                    table.getTableName() + " WITH NO DATA");
+            stmt.execute("ALTER TABLE " + stage + " ADD COLUMN stage_row BIGSERIAL, ADD COLUMN reject_reason TEXT");
+
+            long copied = copyManager.copyIn(copySql(stage, columns, options), input, COPY_BUFFER_SIZE);
+
+            if (table == Table.CUSTOMERS) {
+                stmt.execute("CREATE INDEX ON " + stage + " (email, stage_row)");
+            }
+            stmt.execute("ANALYZE " + stage);
+            stmt.executeUpdate("UPDATE " + stage + " s SET reject_reason = " + String.format(table.rejectReasonSql, stage));
+
+            List<String> rejects = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("SELECT stage_row, reject_reason FROM " + stage +
+                    " WHERE reject_reason IS NOT NULL ORDER BY stage_row LIMIT " + MAX_REPORTED_REJECTS)) {
+                while (rs.next()) {
+                    rejects.add("строка " + rs.getLong("stage_row") + ": " + rs.getString("reject_reason"));
+                }
+            }
+
+            String select = table == Table.ORDERS
+                    ? columns.replace("order_date", "coalesce(order_date, CURRENT_TIMESTAMP)")
+                    : columns;
+            String conflict = table == Table.CUSTOMERS ? " ON CONFLICT DO NOTHING" : "";
+            String insert = "INSERT INTO " + table.getTableName() + " (" + columns + ") " +
+                    "SELECT " + select + " FROM " + stage + " WHERE reject_reason IS NULL ORDER BY stage_row" + conflict;
+            long inserted;
+            if (table == Table.ORDERS) {
+                try (ResultSet rs = stmt.executeQuery("WITH created AS (" + insert +
+                        " RETURNING " + OrderAggregates.CHANGED_COLUMNS + ")" +
+                        OrderAggregates.maintain("created", true) + "SELECT count(*) FROM created")) {
+                    rs.next();
+                    inserted = rs.getLong(1);
+                }
+            } else {
+                inserted = stmt.executeUpdate(insert);
+            }
+
+            conn.commit();
+            return new Result(table, copied, inserted, copied - inserted, rejects);
+        } catch (SQLException | IOException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    // Список колонок попадает в текст COPY и INSERT, поэтому принимаются только известные колонки таблицы
+    private static String checkColumns(Table table, String columns) {
+        Set<String> checked = new LinkedHashSet<>();
+        for (String column : columns.split(",")) {
+            String name = column.trim().toLowerCase(Locale.ROOT);
+            if (!table.allowedColumns.contains(name)) {
+                throw new IllegalArgumentException("Колонка " + column.trim() + " недоступна для загрузки в " +
+                        table.getTableName() + "; допустимые: " + String.join(", ", table.allowedColumns));
+            }
+            if (!checked.add(name)) {
+                throw new IllegalArgumentException("Колонка " + name + " указана дважды");
+            }
+        }
+        return String.join(", ", checked);
+    }
+
+    private String copySql(String target, String columns, Options options) {
+        String format = options.getFormat() == Format.CSV
+                ? "FORMAT csv, HEADER " + options.isHeader()
+                : "FORMAT text";
+        return "COPY " + target + " (" + columns + ") FROM STDIN WITH (" + format + ")";
+    }
+
+    // Считает прочитанные байты и строки и периодически сообщает о прогрессе
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final Table table;
+        private final ProgressListener listener;
+        private boolean skippingHeader;
+        private long bytes;
+        private long lines;
+        private long nextReport = PROGRESS_INTERVAL_BYTES;
+
+        private ProgressInputStream(InputStream in, Table table, ProgressListener listener, boolean skipHeader) {
+            super(in);
+            this.table = table;
+            this.listener = listener;
+            this.skippingHeader = skipHeader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                int n = super.read(b, off, len);
+                if (n <= 0) {
+                    return n;
+                }
+                bytes += n;
+                int start = off;
+                int end = off + n;
+                for (int i = off; i < end; i++) {
+                    if (b[i] == '\n') {
+                        lines++;
+                        if (skippingHeader) {
+                            skippingHeader = false;
+                            start = i + 1;
+                        }
+                    }
+                }
+                if (bytes >= nextReport) {
+                    report();
+                    nextReport = bytes + PROGRESS_INTERVAL_BYTES;
+                }
+                if (skippingHeader || start == end) {
+                    continue;
+                }
+                if (start > off) {
+                    System.arraycopy(b, start, b, off, end - start);
+                }
+                return end - start;
+            }
+        }
+
+        private void report() {
+            if (listener != null) {
+                listener.onProgress(table, bytes, lines);
+            }
+        }
+    }
+
+    public static class Result {
+        private final Table table;
+        private final long rowsCopied;
+        private final long rowsInserted;
+        private final long rowsRejected;
+        private final List<String> rejectedSamples;
+        private long elapsedMillis;
+
+        Result(Table table, long rowsCopied, long rowsInserted, long rowsRejected, List<String> rejectedSamples) {
+            this.table = table;
+            this.rowsCopied = rowsCopied;
+            this.rowsInserted = rowsInserted;
+            this.rowsRejected = rowsRejected;
+            this.rejectedSamples = rejectedSamples;
+        }
+
+        public Table getTable() { return table; }
+        public long getRowsCopied() { return rowsCopied; }
+        public long getRowsInserted() { return rowsInserted; }
+        public long getRowsRejected() { return rowsRejected; }
+        // Первые отбракованные строки (не более 100) с причинами
+        public List<String> getRejectedSamples() { return rejectedSamples; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("BulkLoad[Table: %s, Copied: %d, Inserted: %d, Rejected: %d, Time: %d ms]",
+                    table.getTableName(), rowsCopied, rowsInserted, rowsRejected, elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package project;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Ограниченный потокобезопасный пул подключений.
+// close() на выданном подключении возвращает его в пул, а не закрывает физически.
+// Каждое физическое подключение держит свой кэш подготовленных выражений (StatementCache).
+public class ConnectionPool {
+    private final String url;
+    private final Properties driverProperties;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int validationTimeoutSec;
+    // Проверка isValid при выдаче: всегда (validateOnBorrow) или только после простоя дольше validateAfterIdleMs
+    private final boolean validateOnBorrow;
+    private final long validateAfterIdleMs;
+    private final int statementCacheSize;
+    private final int prepareThreshold;
+    private final Metrics metrics;
+    private final SlowQueryLog slowQueryLog;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // Свободные подключения: голова - последние возвращенные, хвост - самые старые
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private int totalConnections;
+    private int waitingThreads;
+    private boolean closed;
+
+    private final ScheduledExecutorService housekeeper;
+
+    // Статистика
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder destroyedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    public ConnectionPool(String url, Properties driverProperties, int minSize, int maxSize,
+                          long acquireTimeoutMs, long idleTimeoutMs,
+                          int validationTimeoutSec, boolean validateOnBorrow, long validateAfterIdleMs,
+                          int statementCacheSize, int prepareThreshold, Metrics metrics,
+                          SlowQueryLog slowQueryLog) throws SQLException {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Некорректный размер пула: min=" + minSize + ", max=" + maxSize);
+        }
+        // Явно регистрируем драйвер
+        try {
+            Class.forName("org.postgresql.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("PostgreSQL драйвер не найден", e);
+        }
+
+        this.url = url;
+        this.driverProperties = driverProperties;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.validateOnBorrow = validateOnBorrow;
+        this.validateAfterIdleMs = validateAfterIdleMs;
+        this.statementCacheSize = statementCacheSize;
+        this.prepareThreshold = prepareThreshold;
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Пул подключений закрыт");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate != null) {
+                        break;
+                    }
+                    if (totalConnections < maxSize) {
+                        totalConnections++;
+                        create = true;
+                        break;
+                    }
+                    if (remaining <= 0) {
+                        timeoutCount.increment();
+                        throw new SQLException("Таймаут получения подключения из пула (" + acquireTimeoutMs + " мс), " +
+                                "занято " + totalConnections + "/" + maxSize);
+                    }
+                    waitingThreads++;
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Ожидание подключения прервано", e);
+                    } finally {
+                        waitingThreads--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // Физические операции выполняем вне блокировки
+            if (create) {
+                try {
+                    candidate = new PooledConnection(openPhysical());
+                } catch (SQLException e) {
+                    releaseSlot();
+                    throw e;
+                }
+            } else if (needsValidation(candidate) && !isValid(candidate)) {
+                validationFailures.increment();
+                destroy(candidate);
+                remaining = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs) - (System.nanoTime() - start);
+                continue;
+            }
+
+            long waited = System.nanoTime() - start;
+            borrowCount.increment();
+            totalWaitNanos.add(waited);
+            metrics.recordConnectionAcquire(waited);
+            return candidate.lease();
+        }
+    }
+
+    // Возврат подключения в пул (вызывается из close() прокси)
+    private void release(PooledConnection pooled) {
+        Connection physical = pooled.physical;
+        try {
+            if (physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+        } catch (SQLException e) {
+            destroy(pooled);
+            return;
+        }
+
+        pooled.lastUsed = System.currentTimeMillis();
+        boolean shutdown;
+        lock.lock();
+        try {
+            shutdown = closed;
+            if (!shutdown) {
+                idle.addFirst(pooled);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (shutdown) {
+            destroy(pooled);
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, driverProperties);
+        createdCount.increment();
+        return conn;
+    }
+
+    // Недавно возвращенное подключение считается живым: isValid - лишний обход до сервера на каждой выдаче
+    private boolean needsValidation(PooledConnection pooled) {
+        return validateOnBorrow || System.currentTimeMillis() - pooled.lastUsed >= validateAfterIdleMs;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        pooled.statementCache.closeAll();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+            // Подключение уже недоступно
+        }
+        destroyedCount.increment();
+        releaseSlot();
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            totalConnections--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вытеснение простаивающих подключений и поддержание минимального размера
+    private void housekeep() {
+        List<PooledConnection> expired = new ArrayList<>();
+        int missing;
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections - expired.size() > minSize) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsed < idleTimeoutMs) {
+                    break;
+                }
+                it.remove();
+                expired.add(pooled);
+            }
+            missing = Math.max(0, minSize - (totalConnections - expired.size()));
+            totalConnections += missing;
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pooled : expired) {
+            destroy(pooled);
+        }
+        for (int i = 0; i < missing; i++) {
+            try {
+                PooledConnection pooled = new PooledConnection(openPhysical());
+                pooled.lastUsed = System.currentTimeMillis();
+                release(pooled);
+            } catch (SQLException e) {
+                releaseSlot();
+                System.err.println("Пул: не удалось создать подключение - " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Периодическая фоновая задача на потоке обслуживания пула; останавливается вместе с пулом
+    public void scheduleMaintenance(Runnable task, long initialDelayMs, long periodMs) {
+        housekeeper.scheduleWithFixedDelay(task, initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        // Занятые подключения будут закрыты при возврате
+        for (PooledConnection pooled : toClose) {
+            destroy(pooled);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(totalConnections, idle.size(), waitingThreads,
+                    borrowCount.sum(), createdCount.sum(), destroyedCount.sum(),
+                    timeoutCount.sum(), validationFailures.sum(), totalWaitNanos.sum(),
+                    statementCounters.hits.sum(), statementCounters.misses.sum(),
+                    statementCounters.evictions.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Физическое подключение, которое живет в пуле
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statementCache;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new StatementCache(physical, statementCacheSize, prepareThreshold,
+                    statementCounters, slowQueryLog);
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LeaseHandler(this));
+        }
+    }
+
+    // Обработчик одной выдачи подключения: после close() прокси становится недействительным.
+    // Выражения, выданные за время выдачи, закрываются вместе с подключением (как Connection.close()
+    // у драйвера): незакрытое кэшированное выражение иначе навсегда осталось бы занятым в кэше,
+    // а следующий владелец подключения мог бы читать чужой открытый ResultSet.
+    private final class LeaseHandler implements InvocationHandler {
+        // Порог, после которого из списка выражений выдачи убираются уже закрытые
+        private static final int STATEMENT_PRUNE_THRESHOLD = 64;
+
+        private final PooledConnection pooled;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean returned;
+
+        private LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        closeStatements();
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Подключение уже возвращено в пул");
+            }
+            if (method.getName().equals("prepareStatement") && isCacheable(method)) {
+                int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                return track(pooled.statementCache.prepare((Connection) proxy, (String) args[0], autoGeneratedKeys));
+            }
+            Object result;
+            try {
+                result = method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (method.getName().equals("createStatement") || method.getName().equals("prepareStatement")) {
+                String sql = args != null && args[0] instanceof String text ? text : null;
+                return track(pooled.statementCache.wrapUncached((Connection) proxy, (Statement) result, sql));
+            }
+            if (result instanceof Statement statement) {
+                // prepareCall и другие выражения, которые не оборачиваются
+                return track(statement);
+            }
+            return result;
+        }
+
+        private <T extends Statement> T track(T statement) throws SQLException {
+            if (statements.size() >= STATEMENT_PRUNE_THRESHOLD) {
+                Iterator<Statement> it = statements.iterator();
+                while (it.hasNext()) {
+                    if (it.next().isClosed()) {
+                        it.remove();
+                    }
+                }
+            }
+            statements.add(statement);
+            return statement;
+        }
+
+        private void closeStatements() {
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // Выражение все равно будет закрыто вместе с физическим подключением
+                }
+            }
+            statements.clear();
+        }
+
+        // Кэшируются prepareStatement(sql) и prepareStatement(sql, autoGeneratedKeys)
+        private boolean isCacheable(Method method) {
+            Class<?>[] types = method.getParameterTypes();
+            return types.length == 1 || (types.length == 2 && types[1] == int.class);
+        }
+    }
+
+    public static class Stats {
+        private final int total;
+        private final int idle;
+        private final int waiting;
+        private final long borrowed;
+        private final long created;
+        private final long destroyed;
+        private final long timeouts;
+        private final long validationFailures;
+        private final long totalWaitNanos;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+        private final long statementCacheEvictions;
+
+        Stats(int total, int idle, int waiting, long borrowed, long created, long destroyed,
+              long timeouts, long validationFailures, long totalWaitNanos,
+              long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+            this.total = total;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.borrowed = borrowed;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.totalWaitNanos = totalWaitNanos;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        public int getTotal() { return total; }
+        public int getIdle() { return idle; }
+        public int getActive() { return total - idle; }
+        public int getWaiting() { return waiting; }
+        public long getBorrowed() { return borrowed; }
+        public long getCreated() { return created; }
+        public long getDestroyed() { return destroyed; }
+        public long getTimeouts() { return timeouts; }
+        public long getValidationFailures() { return validationFailures; }
+        public long getStatementCacheHits() { return statementCacheHits; }
+        public long getStatementCacheMisses() { return statementCacheMisses; }
+        public long getStatementCacheEvictions() { return statementCacheEvictions; }
+
+        public double getStatementCacheHitRate() {
+            long requests = statementCacheHits + statementCacheMisses;
+            return requests == 0 ? 0 : (double) statementCacheHits / requests;
+        }
+
+        public double getAvgWaitMillis() {
+            return borrowed == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrowed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pool[всего: %d, активных: %d, свободных: %d, ожидают: %d, выдано: %d, " +
+                            "создано: %d, закрыто: %d, таймаутов: %d, невалидных: %d, ср. ожидание: %.3f мс, " +
+                            "кэш выражений: попаданий %d, промахов %d, вытеснено %d]",
+                    total, getActive(), idle, waiting, borrowed, created, destroyed,
+                    timeouts, validationFailures, getAvgWaitMillis(),
+                    statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+}
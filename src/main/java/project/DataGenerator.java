@@ -0,0 +1,344 @@
+package project;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Синтетические данные production-масштаба: товары, клиенты и заказы загружаются через COPY
+// в несколько потоков. Результат детерминирован: при том же seed и тех же объемах получаются
+// те же строки независимо от числа потоков (каждая порция строк имеет свой генератор).
+// Популярность товаров - распределение Ципфа, даты заказов - за years лет до endDate с ростом
+// к концу интервала, статусы - по заданным долям. Все даты (и created_at) отсчитываются от endDate,
+// а не от текущего времени, поэтому набор не зависит от момента запуска. ID задаются явно, после загрузки сдвигаются последовательности
+// и пересчитываются сводки заказов.
+public class DataGenerator {
+    private static final int CHUNK_ROWS = 50_000;
+    private static final int COPY_BUFFER_BYTES = 1 << 20;
+
+    private static final String[] CATEGORIES = {
+            "Электроника", "Книги", "Бытовая техника", "Одежда", "Обувь",
+            "Спорт", "Игрушки", "Продукты", "Красота", "Дом и сад"
+    };
+    private static final String[] ADJECTIVES = {
+            "Компактный", "Профессиональный", "Домашний", "Беспроводной", "Классический",
+            "Умный", "Легкий", "Прочный", "Детский", "Универсальный"
+    };
+    private static final String[] FIRST_NAMES = {
+            "Иван", "Мария", "Алексей", "Елена", "Дмитрий", "Ольга", "Сергей", "Анна",
+            "Михаил", "Наталья", "Андрей", "Татьяна", "Николай", "Ирина", "Павел", "Светлана"
+    };
+    private static final String[] LAST_NAMES = {
+            "Петров", "Сидоров", "Козлов", "Новиков", "Волков", "Морозов", "Павлов", "Лебедев",
+            "Семенов", "Орлов", "Смирнов", "Кузнецов", "Попов", "Соколов", "Федоров", "Егоров"
+    };
+    // Доли статусов среди сгенерированных заказов
+    private static final String[] STATUS_NAMES = {"Новый", "Подтвержден", "В обработке", "Отправлен", "Доставлен", "Отменен"};
+    private static final double[] STATUS_WEIGHTS = {0.04, 0.03, 0.05, 0.08, 0.70, 0.10};
+    // Конец интервала дат по умолчанию (db.generator.endDate)
+    public static final String DEFAULT_END_DATE = "2025-01-01T00:00:00";
+
+    private final DatabaseManager dbManager;
+    private final long seed;
+    private final int threads;
+    private final int years;
+    private final LocalDateTime endDate;
+    private final double zipfExponent;
+
+    public DataGenerator(DatabaseManager dbManager, long seed, int threads, int years, LocalDateTime endDate,
+                         double zipfExponent) {
+        this.dbManager = dbManager;
+        this.seed = seed;
+        this.threads = threads;
+        this.years = years;
+        this.endDate = endDate;
+        this.zipfExponent = zipfExponent;
+    }
+
+    public void generate(long products, int customersCount, long orders) throws SQLException {
+        if (products > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много товаров: " + products);
+        }
+        int productCount = (int) products;
+        if (orders > 0 && (productCount == 0 || customersCount == 0)) {
+            throw new IllegalArgumentException("Для заказов нужны товары и клиенты");
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long productBase = maxId("products");
+            long customerBase = maxId("customers");
+            long orderBase = maxId("orders");
+
+            long end = endDate.toEpochSecond(ZoneOffset.UTC);
+            long span = years * 365L * 24 * 3600;
+
+            // Цены нужны и для товаров, и для сумм заказов
+            long[] priceCents = new long[productCount];
+            SplittableRandom priceRandom = new SplittableRandom(seed);
+            for (int i = 0; i < productCount; i++) {
+                priceCents[i] = logUniform(priceRandom, 100_00, 200_000_00);
+            }
+
+            load(executor, "products", "id, name, description, price, quantity, category, created_at", productCount, 1,
+                    (random, index, row) -> {
+                        String category = CATEGORIES[(int) (index % CATEGORIES.length)];
+                        row.append(productBase + index + 1).append('\t')
+                                .append(ADJECTIVES[random.nextInt(ADJECTIVES.length)]).append(' ')
+                                .append(category.toLowerCase()).append(" товар №").append(index + 1).append('\t')
+                                .append("Сгенерированный товар категории ").append(category).append('\t');
+                        appendMoney(row, priceCents[(int) index]);
+                        row.append('\t').append(random.nextInt(1001)).append('\t').append(category)
+                                .append('\t').append(LocalDateTime.ofEpochSecond(end - random.nextLong(span), 0, ZoneOffset.UTC));
+                    });
+
+            load(executor, "customers", "id, first_name, last_name, phone, email, created_at", customersCount, 2,
+                    (random, index, row) -> {
+                        long id = customerBase + index + 1;
+                        row.append(id).append('\t')
+                                .append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append('\t')
+                                .append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).append('\t')
+                                .append("+79").append(String.format("%09d", random.nextLong(1_000_000_000L))).append('\t')
+                                .append("customer").append(id).append("@example.com").append('\t')
+                                .append(LocalDateTime.ofEpochSecond(end - random.nextLong(span), 0, ZoneOffset.UTC));
+                    });
+
+            if (orders > 0) {
+                // Секции под весь интервал дат создаются до COPY: строки вне секций попали бы в orders_default,
+                // а перенос оттуда при создании секции позже - это DELETE и INSERT всех заказов месяца
+                new OrderPartitioning(dbManager, dbManager.getIntProperty("db.orders.futurePartitions", 3))
+                        .ensurePartitions(LocalDateTime.ofEpochSecond(end - span, 0, ZoneOffset.UTC), endDate);
+                double[] productCdf = zipfCdf(productCount, zipfExponent);
+                // Ранг популярности не совпадает с порядком ID
+                int[] productByRank = shuffledIndexes(productCount, new SplittableRandom(seed ^ 0x5DEECE66DL));
+                long[] statusIds = statusIds();
+                double[] statusCdf = cumulative(STATUS_WEIGHTS);
+
+                load(executor, "orders", "id, product_id, customer_id, status_id, quantity, total_amount, order_date", orders, 3,
+                        (random, index, row) -> {
+                            int product = productByRank[sample(productCdf, random.nextDouble())];
+                            int quantity = 1 + (int) Math.min(9, -Math.log(1 - random.nextDouble()) * 0.8);
+                            // Плотность заказов растет линейно к текущему моменту
+                            long epoch = end - span + (long) (Math.sqrt(random.nextDouble()) * span);
+                            row.append(orderBase + index + 1).append('\t')
+                                    .append(productBase + product + 1).append('\t')
+                                    .append(customerBase + 1 + random.nextInt(customersCount)).append('\t')
+                                    .append(statusIds[sample(statusCdf, random.nextDouble())]).append('\t')
+                                    .append(quantity).append('\t');
+                            appendMoney(row, priceCents[product] * quantity);
+                            row.append('\t').append(LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC));
+                        });
+            }
+
+            finish();
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.printf("Генерация завершена за %.1f с%n", (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        // Строка в формате COPY text без завершающего перевода строки
+        void write(SplittableRandom random, long index, StringBuilder row);
+    }
+
+    // Строки делятся на порции по CHUNK_ROWS; порции загружаются параллельно, каждая своим COPY
+    private void load(ExecutorService executor, String table, String columns, long rows, int stream,
+                      RowWriter writer) throws SQLException {
+        if (rows == 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        AtomicLong loaded = new AtomicLong();
+        long chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        long reportEvery = Math.max(1, chunks / 10);
+        String sql = "COPY " + table + " (" + columns + ") FROM STDIN";
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (long chunk = 0; chunk < chunks; chunk++) {
+            long from = chunk * CHUNK_ROWS;
+            long to = Math.min(rows, from + CHUNK_ROWS);
+            SplittableRandom random = new SplittableRandom(mix(seed, stream, chunk));
+            long chunkNumber = chunk;
+            futures.add(executor.submit(() -> {
+                copyChunk(sql, from, to, random, writer);
+                long done = loaded.addAndGet(to - from);
+                if ((chunkNumber + 1) % reportEvery == 0) {
+                    System.out.printf(" %s: %d / %d%n", table, done, rows);
+                }
+                return null;
+            }));
+        }
+        await(futures);
+        System.out.printf("%s: загружено %d строк за %.1f с%n", table, rows, (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    private void copyChunk(String sql, long from, long to, SplittableRandom random, RowWriter writer) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                // Потеря последних транзакций при сбое сервера для генерации не страшна
+                stmt.execute("SET synchronous_commit = off");
+            }
+            CopyIn copy = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            try {
+                StringBuilder row = new StringBuilder(COPY_BUFFER_BYTES + 1024);
+                for (long index = from; index < to; index++) {
+                    writer.write(random, index, row);
+                    row.append('\n');
+                    if (row.length() >= COPY_BUFFER_BYTES / 2) {
+                        write(copy, row);
+                    }
+                }
+                write(copy, row);
+                copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("RESET synchronous_commit");
+                }
+            }
+        }
+    }
+
+    private static void write(CopyIn copy, StringBuilder row) throws SQLException {
+        byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        row.setLength(0);
+    }
+
+    private static void await(List<Future<?>> futures) throws SQLException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Генерация прервана", e);
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Ошибка генерации: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Последовательности, статистика планировщика и сводки заказов после загрузки с явными ID
+    private void finish() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String table : new String[]{"products", "customers", "orders"}) {
+                stmt.execute("SELECT setval('" + table + "_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM " + table + "), false)");
+                stmt.execute("ANALYZE " + table);
+            }
+        }
+        long start = System.currentTimeMillis();
+        dbManager.rebuildOrderSummaries();
+        dbManager.clearEntityCaches();
+        System.out.printf("Сводки заказов пересчитаны за %.1f с%n", (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    private long maxId(String table) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT coalesce(max(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private long[] statusIds() throws SQLException {
+        long[] ids = new long[STATUS_NAMES.length];
+        for (int i = 0; i < STATUS_NAMES.length; i++) {
+            Long id = dbManager.getStatusDictionary().idOf(STATUS_NAMES[i]);
+            if (id == null) {
+                throw new SQLException("Статус '" + STATUS_NAMES[i] + "' не найден в order_status");
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    // P(ранг k) ~ 1 / k^s
+    static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+        return cdf;
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double sum = Arrays.stream(weights).sum();
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += weights[i];
+            cdf[i] = running / sum;
+        }
+        return cdf;
+    }
+
+    // Первый индекс, у которого cdf >= u
+    private static int sample(double[] cdf, double u) {
+        int index = Arrays.binarySearch(cdf, u);
+        return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+    }
+
+    private static int[] shuffledIndexes(int n, SplittableRandom random) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = tmp;
+        }
+        return indexes;
+    }
+
+    // Цены распределены равномерно по порядку величины
+    private static long logUniform(SplittableRandom random, long min, long max) {
+        return Math.round(Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min))));
+    }
+
+    private static void appendMoney(StringBuilder row, long cents) {
+        row.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            row.append('0');
+        }
+        row.append(fraction);
+    }
+
+    private static long mix(long seed, int stream, long chunk) {
+        long h = seed * 0x9E3779B97F4A7C15L + stream * 0xBF58476D1CE4E5B9L + chunk * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
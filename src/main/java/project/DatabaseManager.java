@@ -1,30 +1,141 @@
 package project;
 
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.io.IOException;
 import java.io.InputStream;
 
 public class DatabaseManager {
-    private static DatabaseManager instance;
+    // Ограничение протокола PostgreSQL на число параметров в одном выражении
+    private static final int MAX_BIND_PARAMETERS = 32767;
+    private static final String NEW_ORDER_STATUS = "Новый";
+    // Только отображаемые столбцы: без SELECT * лишние столбцы не читаются и не передаются
+    private static final String PRODUCT_BY_ID_SQL =
+            "SELECT " + RowMapping.PRODUCT.columns() + " FROM products WHERE id = ?";
+    private static final String PRODUCTS_BY_IDS_SQL =
+            "SELECT " + RowMapping.PRODUCT.columns() + " FROM products WHERE id = ANY(?)";
+    private static final String CUSTOMER_BY_ID_SQL =
+            "SELECT " + RowMapping.CUSTOMER.columns() + " FROM customers WHERE id = ?";
+    private static final String CUSTOMERS_BY_IDS_SQL =
+            "SELECT " + RowMapping.CUSTOMER.columns() + " FROM customers WHERE id = ANY(?)";
+    private static final String STREAM_PRODUCTS_SQL =
+            "SELECT " + RowMapping.PRODUCT_SUMMARY.columns() + " FROM products ORDER BY id";
+    private static final String STREAM_CUSTOMERS_SQL =
+            "SELECT " + RowMapping.CUSTOMER_SUMMARY.columns() + " FROM customers ORDER BY id";
+    // Запросы с фильтром по order_date; OrderPartitioning проверяет на них отсечение секций
+    private static final String RECENT_ORDERS_SQL = """
+            SELECT o.id, o.product_id, o.customer_id, o.status_id,
+                   o.quantity, o.total_amount, o.order_date,
+                   p.name as product_name,
+                   c.first_name || ' ' || c.last_name as customer_name
+            FROM orders o
+            JOIN products p ON o.product_id = p.id
+            JOIN customers c ON o.customer_id = c.id
+            """;
+    static final String RECENT_ORDERS_FIRST_PAGE_SQL = RECENT_ORDERS_SQL + """
+            WHERE o.order_date IS NOT NULL
+            ORDER BY o.order_date DESC, o.id DESC
+            LIMIT ?
+            """;
+    static final String RECENT_ORDERS_NEXT_PAGE_SQL = RECENT_ORDERS_SQL + """
+            WHERE (o.order_date, o.id) < (?, ?) AND o.order_date <= ?
+            ORDER BY o.order_date DESC, o.id DESC
+            LIMIT ?
+            """;
+    static final String ORDER_STATS_RANGE_SQL = """
+            WITH parts AS (
+                SELECT sum(order_count) as order_count, sum(revenue) as revenue,
+                       min(first_order) as first_order, max(last_order) as last_order
+                FROM orders_daily
+                WHERE bucket_start >= ? AND bucket_start < ?
+                UNION ALL
+                SELECT sum(order_count), sum(revenue), min(first_order), max(last_order)
+                FROM orders_hourly
+                WHERE (bucket_start >= ? AND bucket_start < ?) OR (bucket_start >= ? AND bucket_start < ?)
+                UNION ALL
+                SELECT count(*), sum(total_amount), min(order_date), max(order_date)
+                FROM orders
+                WHERE (order_date >= ? AND order_date < ?) OR (order_date >= ? AND order_date < ?)
+            )
+            SELECT coalesce(sum(order_count), 0), coalesce(sum(revenue), 0), min(first_order), max(last_order)
+            FROM parts
+            """;
+
+    private static volatile DatabaseManager instance;
+    private final Properties properties = new Properties();
     private String url;
     private String username;
     private String password;
-    private Connection connection;
+    private final Metrics metrics;
+    private final MetricsServer metricsServer;
+    private final SlowQueryLog slowQueryLog;
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final int fetchSize;
+    private final int multiGetChunkSize;
+    private final EntityCache<Product> productCache;
+    private final EntityCache<Customer> customerCache;
+    private final OrderStatusDictionary statusDictionary;
+    private volatile InventoryLedger inventoryLedger;
+    private volatile OrderIngestionQueue orderIngestion;
+    private volatile OrderSnapshot orderSnapshot;
+    private boolean partitionMaintenance;
 
     private DatabaseManager() {
         loadProperties();
+        this.metrics = new Metrics(getBooleanProperty("db.metrics.jmx.enabled", true));
+        this.slowQueryLog = createSlowQueryLog();
+        this.pool = createPool();
+        this.batchSize = getIntProperty("db.batch.size", 500);
+        this.fetchSize = getIntProperty("db.fetchSize", 1000);
+        this.multiGetChunkSize = getIntProperty("db.multiGet.chunkSize", 1000);
+        this.productCache = new EntityCache<>("products",
+                getIntProperty("db.cache.products.maxSize", 10000),
+                getLongProperty("db.cache.ttlMs", 60000),
+                getLongProperty("db.cache.negativeTtlMs", 5000));
+        this.statusDictionary = new OrderStatusDictionary(this);
+        this.customerCache = new EntityCache<>("customers",
+                getIntProperty("db.cache.customers.maxSize", 10000),
+                getLongProperty("db.cache.ttlMs", 60000),
+                getLongProperty("db.cache.negativeTtlMs", 5000));
+        metrics.registerPool(pool::getStats);
+        metrics.registerCache(productCache::getStats);
+        metrics.registerCache(customerCache::getStats);
+        this.metricsServer = startMetricsServer();
     }
 
     public static DatabaseManager getInstance() {
-        if (instance == null) {
-            instance = new DatabaseManager();
+        DatabaseManager result = instance;
+        if (result == null) {
+            synchronized (DatabaseManager.class) {
+                result = instance;
+                if (result == null) {
+                    result = new DatabaseManager();
+                    instance = result;
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
     private void loadProperties() {
         try (InputStream input = getClass().getClassLoader().getResourceAsStream("application.properties")) {
-            Properties props = new Properties();
             if (input == null) {
                 System.out.println("application.properties не найден, используются значения по умолчанию");
                 this.url = "jdbc:postgresql://localhost:5432/order_db";
@@ -32,28 +143,200 @@ public class DatabaseManager {
                 this.password = "password";
                 return;
             }
-            props.load(input);
+            properties.load(input);
 
-            this.url = props.getProperty("db.url");
-            this.username = props.getProperty("db.username");
-            this.password = props.getProperty("db.password");
+            this.url = properties.getProperty("db.url");
+            this.username = properties.getProperty("db.username");
+            this.password = properties.getProperty("db.password");
 
         } catch (Exception e) {
             throw new RuntimeException("Ошибка загрузки настроек БД", e);
         }
     }
 
+    private Properties driverProperties() {
+        Properties driverProperties = new Properties();
+        driverProperties.setProperty("user", username);
+        driverProperties.setProperty("password", password);
+        return driverProperties;
+    }
+
+    private ConnectionPool createPool() {
+        try {
+            return new ConnectionPool(url, driverProperties(),
+                    getIntProperty("db.pool.minSize", 2),
+                    getIntProperty("db.pool.maxSize", 10),
+                    getLongProperty("db.pool.acquireTimeoutMs", 5000),
+                    getLongProperty("db.pool.idleTimeoutMs", 300000),
+                    getIntProperty("db.pool.validationTimeoutSec", 2),
+                    getBooleanProperty("db.pool.validateOnBorrow", false),
+                    getLongProperty("db.pool.validateAfterIdleMs", 1000),
+                    getIntProperty("db.statementCache.size", 64),
+                    getIntProperty("db.statementCache.prepareThreshold", 3),
+                    metrics, slowQueryLog);
+        } catch (SQLException e) {
+            throw new RuntimeException("Ошибка создания пула подключений", e);
+        }
+    }
+
+    // Журнал медленных запросов (db.slowQuery.*); без файла журнала приложение работает дальше
+    private SlowQueryLog createSlowQueryLog() {
+        if (!getBooleanProperty("db.slowQuery.enabled", true)) {
+            return null;
+        }
+        try {
+            return new SlowQueryLog(url, driverProperties(),
+                    getLongProperty("db.slowQuery.thresholdMs", 500),
+                    Double.parseDouble(getProperty("db.slowQuery.explainSampleRate", "0")),
+                    getLongProperty("db.slowQuery.explainTimeoutMs", 30000),
+                    getProperty("db.slowQuery.file", "logs/slow-queries.%g.log"),
+                    getIntProperty("db.slowQuery.fileLimitBytes", 10 * 1024 * 1024),
+                    getIntProperty("db.slowQuery.fileCount", 5));
+        } catch (IOException e) {
+            System.err.println("Журнал медленных запросов отключен: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Эндпоинт /metrics не обязателен: если порт занят, приложение работает без него
+    private MetricsServer startMetricsServer() {
+        if (!getBooleanProperty("db.metrics.http.enabled", false)) {
+            return null;
+        }
+        try {
+            MetricsServer server = new MetricsServer(metrics, getIntProperty("db.metrics.http.port", 9404));
+            System.out.println("Метрики: http://localhost:" + server.getPort() + "/metrics");
+            return server;
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить эндпоинт метрик: " + e.getMessage());
+            return null;
+        }
+    }
+
+    String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue).trim();
+    }
+
+    int getIntProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    long getLongProperty(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    // Выдает подключение из пула; close() возвращает его обратно
     public Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            // Явно регистрируем драйвер
+        return pool.getConnection();
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    public int getPoolMaxSize() {
+        return pool.getMaxSize();
+    }
+
+    public OrderStatusDictionary getStatusDictionary() {
+        return statusDictionary;
+    }
+
+    public EntityCache.Stats getProductCacheStats() {
+        return productCache.getStats();
+    }
+
+    public EntityCache.Stats getCustomerCacheStats() {
+        return customerCache.getStats();
+    }
+
+    void invalidateProduct(long productId) {
+        productCache.invalidate(productId);
+    }
+
+    // Включает резервирование остатков в памяти (InventoryLedger): placeOrder и
+    // updateProductQuantity идут через журнал, products.quantity обновляется пакетно.
+    // Вызывать после миграций - при старте применяются невыгруженные записи журнала.
+    public synchronized InventoryLedger enableInventoryLedger() throws SQLException {
+        if (inventoryLedger == null) {
+            InventoryLedger ledger = new InventoryLedger(this, getLongProperty("db.inventoryLedger.flushIntervalMs", 200));
+            ledger.start();
+            inventoryLedger = ledger;
+        }
+        return inventoryLedger;
+    }
+
+    // Включает групповую фиксацию заказов (OrderIngestionQueue, настройки db.ingest.*)
+    public synchronized OrderIngestionQueue enableOrderIngestion() {
+        if (orderIngestion == null) {
+            orderIngestion = new OrderIngestionQueue(this,
+                    getIntProperty("db.ingest.queueCapacity", 10000),
+                    getIntProperty("db.ingest.maxBatchSize", 500),
+                    getLongProperty("db.ingest.lingerMs", 5),
+                    getLongProperty("db.ingest.offerTimeoutMs", 1000));
+        }
+        return orderIngestion;
+    }
+
+    // Включает колоночный снимок orders в памяти (OrderSnapshot, настройки db.snapshot.*):
+    // первичная загрузка выполняется сразу, дальше снимок догружается в фоне
+    public synchronized OrderSnapshot enableOrderSnapshot() throws SQLException {
+        if (orderSnapshot == null) {
+            OrderSnapshot snapshot = new OrderSnapshot(this,
+                    getLongProperty("db.snapshot.refreshIntervalMs", 1000),
+                    getLongProperty("db.snapshot.fullReloadIntervalSec", 600) * 1000);
+            snapshot.start();
+            orderSnapshot = snapshot;
+        }
+        return orderSnapshot;
+    }
+
+    // Создание секций orders наперед в фоне: сразу после старта и затем каждые
+    // db.orders.partitionCheckIntervalMs, чтобы у долго работающего процесса не кончились секции
+    public synchronized void schedulePartitionMaintenance(OrderPartitioning partitioning) {
+        if (partitionMaintenance) {
+            return;
+        }
+        partitionMaintenance = true;
+        pool.scheduleMaintenance(() -> {
             try {
-                Class.forName("org.postgresql.Driver");
-            } catch (ClassNotFoundException e) {
-                throw new SQLException("PostgreSQL драйвер не найден", e);
+                partitioning.ensureFuturePartitions();
+            } catch (SQLException e) {
+                System.err.println("Ошибка создания секций orders: " + e.getMessage());
             }
-            connection = DriverManager.getConnection(url, username, password);
-        }
-        return connection;
+        }, 0, getLongProperty("db.orders.partitionCheckIntervalMs", 3600000));
+    }
+
+    // Асинхронное создание заказа через очередь групповой фиксации
+    public CompletableFuture<Long> submitOrder(Order order) {
+        return enableOrderIngestion().submit(order);
+    }
+
+    // Сброс кэшей сущностей после изменений в обход DatabaseManager (массовая загрузка и т.п.)
+    public void clearEntityCaches() {
+        productCache.clear();
+        customerCache.clear();
+    }
+
+    // Полный пересчет сводок по заказам (product_sales, orders_hourly, orders_daily)
+    public void rebuildOrderSummaries() throws SQLException {
+        metrics.time("rebuildOrderSummaries", () -> {
+            try (Connection conn = getConnection()) {
+                OrderAggregates.rebuild(conn);
+            }
+            return null;
+        });
     }
 
     public void testConnection() {
@@ -65,93 +348,152 @@ public class DatabaseManager {
     }
 
     public void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Подключение к БД закрыто");
-            } catch (SQLException e) {
-                System.err.println("Ошибка при закрытии подключения: " + e.getMessage());
-            }
+        OrderIngestionQueue ingestion = orderIngestion;
+        if (ingestion != null) {
+            ingestion.close();
+            System.out.println("Очередь заказов: " + ingestion);
+        }
+        InventoryLedger ledger = inventoryLedger;
+        if (ledger != null) {
+            ledger.stop();
+            System.out.println("Журнал остатков: " + ledger);
+        }
+        OrderSnapshot snapshot = orderSnapshot;
+        if (snapshot != null) {
+            snapshot.stop();
+        }
+        System.out.println("Статистика пула: " + pool.getStats());
+        System.out.println("Статистика кэша: " + productCache.getStats());
+        System.out.println("Статистика кэша: " + customerCache.getStats());
+        // Останавливает фоновый EXPLAIN и закрывает его отдельное подключение
+        if (slowQueryLog != null) {
+            slowQueryLog.close();
         }
+        pool.close();
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        metrics.unregisterAll();
+        System.out.println("Подключение к БД закрыто");
     }
 
     // CRUD операции для продуктов
     public Long createProduct(Product product) throws SQLException {
-        String sql = "INSERT INTO products (name, description, price, quantity, category) VALUES (?, ?, ?, ?, ?)";
+        return metrics.time("createProduct", () -> {
+            String sql = "INSERT INTO products (name, description, price, quantity, category) VALUES (?, ?, ?, ?, ?)";
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            stmt.setString(1, product.getName());
-            stmt.setString(2, product.getDescription());
-            stmt.setBigDecimal(3, product.getPrice());
-            stmt.setInt(4, product.getQuantity());
-            stmt.setString(5, product.getCategory());
+                stmt.setString(1, product.getName());
+                stmt.setString(2, product.getDescription());
+                stmt.setBigDecimal(3, product.getPrice());
+                stmt.setInt(4, product.getQuantity());
+                stmt.setString(5, product.getCategory());
 
-            stmt.executeUpdate();
-            ResultSet keys = stmt.getGeneratedKeys();
-            if (keys.next()) {
-                return keys.getLong(1);
+                stmt.executeUpdate();
+                ResultSet keys = stmt.getGeneratedKeys();
+                if (keys.next()) {
+                    long id = keys.getLong(1);
+                    // Сбрасываем возможную запись "не найден" для этого ID
+                    productCache.invalidate(id);
+                    return id;
+                }
+                throw new SQLException("Не удалось получить ID продукта");
             }
-            throw new SQLException("Не удалось получить ID продукта");
-        }
+        });
     }
 
+    // Чтение через кэш (db.cache.*); возвращаемый объект общий - не изменяйте его
     public Product getProductById(Long id) throws SQLException {
-        String sql = "SELECT * FROM products WHERE id = ?";
-
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        return metrics.time("getProductById", () -> productCache.get(id, this::loadProductById));
+    }
 
-            stmt.setLong(1, id);
-            ResultSet rs = stmt.executeQuery();
+    private Product loadProductById(long id) throws SQLException {
+        return withLedgerQuantity(loadById(PRODUCT_BY_ID_SQL, id, RowMapping.PRODUCT));
+    }
 
-            if (rs.next()) {
-                Product product = new Product();
-                product.setId(rs.getLong("id"));
-                product.setName(rs.getString("name"));
-                product.setDescription(rs.getString("description"));
-                product.setPrice(rs.getBigDecimal("price"));
-                product.setQuantity(rs.getInt("quantity"));
-                product.setCategory(rs.getString("category"));
-                product.setCreatedAt(rs.getTimestamp("created_at") != null ?
-                        rs.getTimestamp("created_at").toLocalDateTime() : null);
-                return product;
+    // С журналом остатков products.quantity отстает до выгрузки: остаток берется из памяти журнала
+    private Product withLedgerQuantity(Product product) {
+        InventoryLedger ledger = inventoryLedger;
+        if (product != null && ledger != null) {
+            Long available = ledger.getTrackedAvailable(product.getId());
+            if (available != null) {
+                product.setQuantity(available.intValue());
             }
-            return null;
         }
+        return product;
+    }
+
+    // Множественное чтение одним запросом WHERE id = ANY(?); из БД читаются только промахи кэша.
+    // Ключ результата - ID, отсутствующих в БД ID в результате нет.
+    public Map<Long, Product> getProductsByIds(Collection<Long> ids) throws SQLException {
+        return metrics.time("getProductsByIds", () -> {
+            return productCache.getAll(ids, missing -> {
+                Map<Long, Product> loaded = loadByIds(PRODUCTS_BY_IDS_SQL, missing, RowMapping.PRODUCT, Product::getId);
+                loaded.values().forEach(this::withLedgerQuantity);
+                return loaded;
+            });
+        });
     }
 
     // CRUD операции для клиентов
     public Long createCustomer(Customer customer) throws SQLException {
-        String sql = "INSERT INTO customers (first_name, last_name, phone, email) VALUES (?, ?, ?, ?)";
+        return metrics.time("createCustomer", () -> {
+            String sql = "INSERT INTO customers (first_name, last_name, phone, email) VALUES (?, ?, ?, ?)";
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            stmt.setString(1, customer.getFirstName());
-            stmt.setString(2, customer.getLastName());
-            stmt.setString(3, customer.getPhone());
-            stmt.setString(4, customer.getEmail());
+                stmt.setString(1, customer.getFirstName());
+                stmt.setString(2, customer.getLastName());
+                stmt.setString(3, customer.getPhone());
+                stmt.setString(4, customer.getEmail());
 
-            stmt.executeUpdate();
-            ResultSet keys = stmt.getGeneratedKeys();
-            if (keys.next()) {
-                return keys.getLong(1);
-            }
-            throw new SQLException("Не удалось получить ID клиента");
-        } catch (SQLException e) {
-            // Пробрасываем исключение с более понятным сообщением
-            if (e.getMessage().contains("duplicate key") || e.getMessage().contains("unique constraint")) {
-                throw new SQLException("Клиент с email '" + customer.getEmail() + "' уже существует", e);
+                stmt.executeUpdate();
+                ResultSet keys = stmt.getGeneratedKeys();
+                if (keys.next()) {
+                    long id = keys.getLong(1);
+                    customerCache.invalidate(id);
+                    return id;
+                }
+                throw new SQLException("Не удалось получить ID клиента");
+            } catch (SQLException e) {
+                // Пробрасываем исключение с более понятным сообщением
+                if (isDuplicateKey(e)) {
+                    throw new SQLException(duplicateCustomerMessage(customer), e);
+                }
+                throw e;
             }
-            throw e;
-        }
+        });
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        return "23505".equals(e.getSQLState())
+                || e.getMessage().contains("duplicate key") || e.getMessage().contains("unique constraint");
+    }
+
+    private static String duplicateCustomerMessage(Customer customer) {
+        return "Клиент с email '" + customer.getEmail() + "' уже существует";
     }
 
     public Customer getCustomerById(Long id) throws SQLException {
-        String sql = "SELECT * FROM customers WHERE id = ?";
+        return metrics.time("getCustomerById", () -> customerCache.get(id, this::loadCustomerById));
+    }
 
+    private Customer loadCustomerById(long id) throws SQLException {
+        return loadById(CUSTOMER_BY_ID_SQL, id, RowMapping.CUSTOMER);
+    }
+
+    public Map<Long, Customer> getCustomersByIds(Collection<Long> ids) throws SQLException {
+        return metrics.time("getCustomersByIds", () -> {
+            return customerCache.getAll(ids, missing -> loadByIds(CUSTOMERS_BY_IDS_SQL,
+                    missing, RowMapping.CUSTOMER, Customer::getId));
+        });
+    }
+
+    // Одна сущность по ID; столбцы и их номера задает mapping
+    private <T> T loadById(String sql, long id, RowMapping<T> mapping) throws SQLException {
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
@@ -159,174 +501,646 @@ public class DatabaseManager {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                Customer customer = new Customer();
-                customer.setId(rs.getLong("id"));
-                customer.setFirstName(rs.getString("first_name"));
-                customer.setLastName(rs.getString("last_name"));
-                customer.setPhone(rs.getString("phone"));
-                customer.setEmail(rs.getString("email"));
-                customer.setCreatedAt(rs.getTimestamp("created_at") != null ?
-                        rs.getTimestamp("created_at").toLocalDateTime() : null);
-                return customer;
+                metrics.recordRowsFetched(1);
+                return mapping.forQuery(sql, rs).map(rs);
             }
+            metrics.recordRowsFetched(0);
             return null;
         }
     }
 
+    // Загрузка по массиву ID: большие наборы делятся на блоки по db.multiGet.chunkSize
+    private <T> Map<Long, T> loadByIds(String sql, long[] ids, RowMapping<T> mapping,
+                                       Function<T, Long> idOf) throws SQLException {
+        Map<Long, T> result = new HashMap<>(ids.length * 2);
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (int from = 0; from < ids.length; from += multiGetChunkSize) {
+                int to = Math.min(from + multiGetChunkSize, ids.length);
+                Long[] chunk = new Long[to - from];
+                for (int i = from; i < to; i++) {
+                    chunk[i - from] = ids[i];
+                }
+                Array array = conn.createArrayOf("bigint", chunk);
+                stmt.setArray(1, array);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMapping.Mapper<T> mapper = mapping.forQuery(sql, rs);
+                    long fetched = 0;
+                    while (rs.next()) {
+                        T entity = mapper.map(rs);
+                        result.put(idOf.apply(entity), entity);
+                        fetched++;
+                    }
+                    metrics.recordRowsFetched(fetched);
+                }
+                array.free();
+            }
+        }
+        return result;
+    }
+
     // CRUD операции для заказов
     public Long createOrder(Order order) throws SQLException {
-        String sql = "INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount) VALUES (?, ?, ?, ?, ?)";
+        return metrics.time("createOrder", () -> {
+            String sql = """
+                WITH created AS (
+                    INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount)
+                    VALUES (?, ?, ?, ?, ?)
+                    RETURNING %s
+                )
+                %s
+                SELECT id FROM created
+                """.formatted(OrderAggregates.CHANGED_COLUMNS, OrderAggregates.maintain("created", true));
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setLong(1, order.getProductId());
-            stmt.setLong(2, order.getCustomerId());
-            stmt.setLong(3, order.getStatusId());
-            stmt.setInt(4, order.getQuantity());
-            stmt.setBigDecimal(5, order.getTotalAmount());
+                stmt.setLong(1, order.getProductId());
+                stmt.setLong(2, order.getCustomerId());
+                stmt.setLong(3, order.getStatusId());
+                stmt.setInt(4, order.getQuantity());
+                stmt.setBigDecimal(5, order.getTotalAmount());
 
-            stmt.executeUpdate();
-            ResultSet keys = stmt.getGeneratedKeys();
-            if (keys.next()) {
-                return keys.getLong(1);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+                throw new SQLException("Не удалось получить ID заказа");
             }
-            throw new SQLException("Не удалось получить ID заказа");
+        });
+    }
+
+    // Оформление заказа одним выражением: условное списание со склада и вставка заказа в CTE.
+    // Сумма считается в БД по текущей цене; при нехватке товара ничего не меняется.
+    public Long placeOrder(Long productId, Long customerId, int quantity) throws SQLException {
+        return metrics.time("placeOrder", () -> {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Количество должно быть больше нуля: " + quantity);
+            }
+            Long newStatusId = statusDictionary.idOf(NEW_ORDER_STATUS);
+            if (newStatusId == null) {
+                throw new SQLException("Статус '" + NEW_ORDER_STATUS + "' не найден в order_status");
+            }
+            InventoryLedger ledger = inventoryLedger;
+            if (ledger != null) {
+                try {
+                    return ledger.placeOrder(productId, customerId, newStatusId, quantity);
+                } finally {
+                    productCache.invalidate(productId);
+                }
+            }
+
+            String sql = """
+                WITH reserved AS (
+                    UPDATE products SET quantity = quantity - ?
+                    WHERE id = ? AND quantity >= ?
+                    RETURNING id, price
+                ),
+                created AS (
+                    INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount)
+                    SELECT id, ?, ?, ?, price * ? FROM reserved
+                    RETURNING %s
+                )
+                %s
+                SELECT id FROM created
+                """.formatted(OrderAggregates.CHANGED_COLUMNS, OrderAggregates.maintain("created", true));
+
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setInt(1, quantity);
+                stmt.setLong(2, productId);
+                stmt.setInt(3, quantity);
+                stmt.setLong(4, customerId);
+                stmt.setLong(5, newStatusId);
+                stmt.setInt(6, quantity);
+                stmt.setInt(7, quantity);
+
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+                throw stockFailure(conn, productId, quantity);
+            } finally {
+                productCache.invalidate(productId);
+            }
+        });
+    }
+
+    // Выясняем причину отказа только на неудачном пути
+    private SQLException stockFailure(Connection conn, long productId, int requested) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            stmt.setLong(1, productId);
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                return new SQLException("Товар с ID " + productId + " не найден");
+            }
+            return new InsufficientStockException(productId, requested, rs.getInt(1));
         }
     }
 
     public boolean deleteOrder(Long id) throws SQLException {
-        String sql = "DELETE FROM orders WHERE id = ?";
+        return metrics.time("deleteOrder", () -> {
+            String sql = """
+                WITH deleted AS (
+                    DELETE FROM orders WHERE id = ?
+                    RETURNING %s
+                )
+                %s
+                SELECT count(*) FROM deleted
+                """.formatted(OrderAggregates.CHANGED_COLUMNS, OrderAggregates.maintain("deleted", false));
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            // Свертки интервала заказа пересчитываются целиком: их строки блокируются заранее
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (String lock : OrderAggregates.lockBuckets("SELECT order_date FROM orders WHERE id = ?")) {
+                        try (PreparedStatement stmt = conn.prepareStatement(lock)) {
+                            stmt.setLong(1, id);
+                            stmt.execute();
+                        }
+                    }
+                    boolean deleted;
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setLong(1, id);
+                        ResultSet rs = stmt.executeQuery();
+                        deleted = rs.next() && rs.getLong(1) > 0;
+                    }
+                    conn.commit();
+                    return deleted;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        });
+    }
 
-            stmt.setLong(1, id);
-            return stmt.executeUpdate() > 0;
+    // Пакетные операции: многострочный INSERT на каждый блок из db.batch.size строк.
+    // Каждый блок фиксируется отдельно; если блок не прошел, он повторяется построчно,
+    // и ошибки отдельных строк попадают в результат, не прерывая остальную вставку.
+    public BatchInsertResult createProducts(List<Product> products) throws SQLException {
+        return metrics.time("createProducts", () -> {
+            return insertBatch("products", "name, description, price, quantity, category", 5, products,
+                    (stmt, i, product) -> {
+                        stmt.setString(i, product.getName());
+                        stmt.setString(i + 1, product.getDescription());
+                        stmt.setBigDecimal(i + 2, product.getPrice());
+                        stmt.setInt(i + 3, product.getQuantity());
+                        stmt.setString(i + 4, product.getCategory());
+                    },
+                    (product, e) -> e.getMessage());
+        });
+    }
+
+    public BatchInsertResult createCustomers(List<Customer> customers) throws SQLException {
+        return metrics.time("createCustomers", () -> {
+            return insertBatch("customers", "first_name, last_name, phone, email", 4, customers,
+                    (stmt, i, customer) -> {
+                        stmt.setString(i, customer.getFirstName());
+                        stmt.setString(i + 1, customer.getLastName());
+                        stmt.setString(i + 2, customer.getPhone());
+                        stmt.setString(i + 3, customer.getEmail());
+                    },
+                    (customer, e) -> isDuplicateKey(e) ? duplicateCustomerMessage(customer) : e.getMessage());
+        });
+    }
+
+    public BatchInsertResult createOrders(List<Order> orders) throws SQLException {
+        return metrics.time("createOrders", () -> {
+            return insertBatch("orders", "product_id, customer_id, status_id, quantity, total_amount", 5, orders,
+                    (stmt, i, order) -> {
+                        stmt.setLong(i, order.getProductId());
+                        stmt.setLong(i + 1, order.getCustomerId());
+                        stmt.setLong(i + 2, order.getStatusId());
+                        stmt.setInt(i + 3, order.getQuantity());
+                        stmt.setBigDecimal(i + 4, order.getTotalAmount());
+                    },
+                    (order, e) -> e.getMessage());
+        });
+    }
+
+    private <T> BatchInsertResult insertBatch(String table, String columns, int columnCount, List<T> rows,
+                                              RowBinder<T> binder, ErrorDescriber<T> describer) throws SQLException {
+        BatchInsertResult result = insertBatchChunks(table, columns, columnCount, rows, binder, describer);
+        EntityCache<?> cache = table.equals("products") ? productCache : table.equals("customers") ? customerCache : null;
+        if (cache != null) {
+            for (Long id : result.getIds()) {
+                if (id != null) {
+                    cache.invalidate(id);
+                }
+            }
         }
+        return result;
     }
 
-    // Методы для отображения данных
-    public void printAllProducts() throws SQLException {
-        String sql = "SELECT * FROM products ORDER BY id";
+    private <T> BatchInsertResult insertBatchChunks(String table, String columns, int columnCount, List<T> rows,
+                                                    RowBinder<T> binder, ErrorDescriber<T> describer) throws SQLException {
+        BatchInsertResult result = new BatchInsertResult(rows.size());
+        if (rows.isEmpty()) {
+            return result;
+        }
+        int chunkSize = Math.max(1, Math.min(batchSize, MAX_BIND_PARAMETERS / columnCount));
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
 
-            System.out.println("\n ВСЕ ТОВАРЫ:");
+            for (int from = 0; from < rows.size(); from += chunkSize) {
+                int to = Math.min(from + chunkSize, rows.size());
+                try {
+                    insertChunk(conn, table, columns, columnCount, rows, from, to, binder, result);
+                    conn.commit();
+                } catch (SQLException chunkError) {
+                    conn.rollback();
+                    // Блок откатился целиком - повторяем построчно, чтобы найти проблемные строки
+                    for (int i = from; i < to; i++) {
+                        try {
+                            insertChunk(conn, table, columns, columnCount, rows, i, i + 1, binder, result);
+                            conn.commit();
+                        } catch (SQLException rowError) {
+                            conn.rollback();
+                            result.setId(i, null);
+                            result.addFailure(i, describer.describe(rows.get(i), rowError));
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private <T> void insertChunk(Connection conn, String table, String columns, int columnCount, List<T> rows,
+                                 int from, int to, RowBinder<T> binder, BatchInsertResult result) throws SQLException {
+        String placeholders = "(" + "?, ".repeat(columnCount - 1) + "?)";
+        String insert = "INSERT INTO " + table + " (" + columns + ") VALUES " +
+                String.join(", ", Collections.nCopies(to - from, placeholders));
+        // Порядок строк RETURNING не гарантирован; ID из последовательности выдаются в порядке VALUES,
+        // поэтому ORDER BY id сопоставляет их строкам. Для заказов сводки обновляются тем же выражением.
+        String sql = "WITH created AS (" + insert + " RETURNING " +
+                (table.equals("orders") ? OrderAggregates.CHANGED_COLUMNS + ")" + OrderAggregates.maintain("created", true)
+                                        : "id) ") +
+                "SELECT id FROM created ORDER BY id";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = from; i < to; i++) {
+                binder.bind(stmt, (i - from) * columnCount + 1, rows.get(i));
+            }
+            metrics.recordBatch(table, to - from);
+            ResultSet rs = stmt.executeQuery();
+            int index = from;
             while (rs.next()) {
-                System.out.printf("ID: %d | %s | Цена: %.2f | Кол-во: %d | Категория: %s%n",
-                        rs.getLong("id"),
-                        rs.getString("name"),
-                        rs.getBigDecimal("price"),
-                        rs.getInt("quantity"),
-                        rs.getString("category"));
+                result.setId(index++, rs.getLong(1));
+            }
+            if (index != to) {
+                throw new SQLException("Получено " + (index - from) + " ID вместо " + (to - from));
             }
         }
     }
 
-    public void printAllCustomers() throws SQLException {
-        String sql = "SELECT * FROM customers ORDER BY id";
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement stmt, int firstParameter, T row) throws SQLException;
+    }
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    @FunctionalInterface
+    private interface ErrorDescriber<T> {
+        String describe(T row, SQLException e);
+    }
 
-            System.out.println("\n ВСЕ КЛИЕНТЫ:");
-            while (rs.next()) {
-                System.out.printf("ID: %d | %s %s | Email: %s | Телефон: %s%n",
-                        rs.getLong("id"),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getString("email"),
-                        rs.getString("phone"));
+    // Потоковое чтение: курсор (autocommit off + fetchSize) держит в памяти только одну порцию строк.
+    // Поток нужно закрыть (try-with-resources), тогда подключение вернется в пул.
+    public Stream<Product> streamProducts() throws SQLException {
+        return streamQuery("streamProducts", STREAM_PRODUCTS_SQL, RowMapping.PRODUCT_SUMMARY);
+    }
+
+    public Stream<Customer> streamCustomers() throws SQLException {
+        return streamQuery("streamCustomers", STREAM_CUSTOMERS_SQL, RowMapping.CUSTOMER_SUMMARY);
+    }
+
+    public void forEachProduct(Consumer<Product> action) throws SQLException {
+        try (Stream<Product> products = streamProducts()) {
+            products.forEach(action);
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void forEachCustomer(Consumer<Customer> action) throws SQLException {
+        try (Stream<Customer> customers = streamCustomers()) {
+            customers.forEach(action);
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Строки считаются при чтении и попадают в метрики operation при закрытии потока
+    private <T> Stream<T> streamQuery(String operation, String sql, RowMapping<T> mapping) throws SQLException {
+        Connection conn = getConnection();
+        PreparedStatement stmt = null;
+        try {
+            // Без транзакции драйвер игнорирует fetchSize и читает весь результат в память
+            conn.setAutoCommit(false);
+            stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(fetchSize);
+            ResultSet rs = stmt.executeQuery();
+            RowMapping.Mapper<T> mapper = mapping.forQuery(sql, rs);
+            long[] fetched = new long[1];
+
+            Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    try {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        fetched[0]++;
+                        action.accept(mapper.map(rs));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new UncheckedSQLException(e);
+                    }
+                }
+            };
+            PreparedStatement openStatement = stmt;
+            return StreamSupport.stream(rows, false)
+                    .onClose(() -> {
+                        metrics.recordRowsFetched(operation, fetched[0]);
+                        closeQuietly(rs, openStatement, conn);
+                    });
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(stmt, conn);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                System.err.println("Ошибка при закрытии ресурса: " + e.getMessage());
             }
         }
     }
 
+    // Ошибка JDBC внутри Stream, где нельзя бросить проверяемое исключение
+    public static class UncheckedSQLException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public UncheckedSQLException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    // Методы для отображения данных
+    public void printAllProducts() throws SQLException {
+        System.out.println("\n ВСЕ ТОВАРЫ:");
+        forEachProduct(product -> System.out.printf("ID: %d | %s | Цена: %.2f | Кол-во: %d | Категория: %s%n",
+                product.getId(),
+                product.getName(),
+                product.getPrice(),
+                product.getQuantity(),
+                product.getCategory()));
+    }
+
+    public void printAllCustomers() throws SQLException {
+        System.out.println("\n ВСЕ КЛИЕНТЫ:");
+        forEachCustomer(customer -> System.out.printf("ID: %d | %s %s | Email: %s | Телефон: %s%n",
+                customer.getId(),
+                customer.getFirstName(),
+                customer.getLastName(),
+                customer.getEmail(),
+                customer.getPhone()));
+    }
+
+    // Лента заказов с keyset-пагинацией по (order_date, id): каждая страница - один проход
+    // по индексу idx_orders_date_id, без OFFSET. pageToken = null - первая страница.
+    // Заказы без order_date в ленту не попадают. Название статуса берется из справочника в памяти.
+    public OrderPage getRecentOrdersPage(String pageToken, int pageSize) throws SQLException {
+        return metrics.time("getRecentOrdersPage", () -> {
+            String sql = pageToken == null ? RECENT_ORDERS_FIRST_PAGE_SQL : RECENT_ORDERS_NEXT_PAGE_SQL;
+
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                int index = 1;
+                if (pageToken != null) {
+                    OrderPage.Cursor cursor = OrderPage.decodeToken(pageToken);
+                    stmt.setTimestamp(index++, Timestamp.valueOf(cursor.orderDate));
+                    stmt.setLong(index++, cursor.id);
+                    // Дублирующее условие по order_date: сравнение строк не отсекает секции orders
+                    stmt.setTimestamp(index++, Timestamp.valueOf(cursor.orderDate));
+                }
+                // Берем на одну строку больше, чтобы узнать, есть ли следующая страница
+                stmt.setInt(index, pageSize + 1);
+                ResultSet rs = stmt.executeQuery();
+
+                List<Order> orders = new ArrayList<>(pageSize);
+                boolean hasNext = false;
+                RowMapping.Mapper<Order> mapper = RowMapping.ORDER_FEED.forQuery(sql, rs);
+                while (rs.next()) {
+                    if (orders.size() == pageSize) {
+                        hasNext = true;
+                        break;
+                    }
+                    Order order = mapper.map(rs);
+                    order.setStatusName(statusDictionary.nameOf(order.getStatusId()));
+                    orders.add(order);
+                }
+                metrics.recordRowsFetched(orders.size() + (hasNext ? 1 : 0));
+
+                String nextToken = null;
+                if (hasNext) {
+                    Order last = orders.get(orders.size() - 1);
+                    nextToken = OrderPage.encodeToken(last.getOrderDate(), last.getId());
+                }
+                return new OrderPage(orders, nextToken);
+            }
+        });
+    }
+
     public void printRecentOrders(int limit) throws SQLException {
-        String sql = """
-            SELECT o.id, p.name as product_name, 
-                   c.first_name || ' ' || c.last_name as customer_name,
-                   os.name as status_name,
-                   o.quantity, o.total_amount, o.order_date
-            FROM orders o
-            JOIN products p ON o.product_id = p.id
-            JOIN customers c ON o.customer_id = c.id
-            JOIN order_status os ON o.status_id = os.id
-            ORDER BY o.order_date DESC
-            LIMIT ?
-            """;
+        OrderPage page = getRecentOrdersPage(null, limit);
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        System.out.println("\n ПОСЛЕДНИЕ ЗАКАЗЫ:");
+        for (Order order : page.getOrders()) {
+            System.out.printf("Заказ #%d | Товар: %s | Клиент: %s | Кол-во: %d | Сумма: %.2f | Статус: %s | Дата: %s%n",
+                    order.getId(),
+                    order.getProductName(),
+                    order.getCustomerName(),
+                    order.getQuantity(),
+                    order.getTotalAmount(),
+                    order.getStatusName(),
+                    Timestamp.valueOf(order.getOrderDate()));
+        }
+    }
 
-            stmt.setInt(1, limit);
-            ResultSet rs = stmt.executeQuery();
+    // Статистика заказов за всю историю - по дневным сверткам, без чтения orders
+    public OrderStats getOrderStats() throws SQLException {
+        return metrics.time("getOrderStats", () -> {
+            String sql = """
+                SELECT coalesce(sum(order_count), 0), coalesce(sum(revenue), 0), min(first_order), max(last_order)
+                FROM orders_daily
+                """;
 
-            System.out.println("\n ПОСЛЕДНИЕ ЗАКАЗЫ:");
-            while (rs.next()) {
-                System.out.printf("Заказ #%d | Товар: %s | Клиент: %s | Кол-во: %d | Сумма: %.2f | Статус: %s | Дата: %s%n",
-                        rs.getLong("id"),
-                        rs.getString("product_name"),
-                        rs.getString("customer_name"),
-                        rs.getInt("quantity"),
-                        rs.getBigDecimal("total_amount"),
-                        rs.getString("status_name"),
-                        rs.getTimestamp("order_date"));
+            try (Connection conn = getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                rs.next();
+                return mapOrderStats(rs);
+            }
+        });
+    }
+
+    // Статистика заказов за [from, to): целые сутки берутся из orders_daily, целые часы на краях -
+    // из orders_hourly, и только неполные часы на краях читаются из orders по idx_orders_date.
+    // Объем чтения не зависит от длины истории и ширины интервала.
+    public OrderStats getOrderStats(LocalDateTime from, LocalDateTime to) throws SQLException {
+        return metrics.time("getOrderStatsRange", () -> {
+            if (!from.isBefore(to)) {
+                return new OrderStats(0, BigDecimal.ZERO, null, null);
+            }
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(ORDER_STATS_RANGE_SQL)) {
+                int index = 1;
+                for (LocalDateTime bound : orderStatsBounds(from, to)) {
+                    stmt.setTimestamp(index++, Timestamp.valueOf(bound));
+                }
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                return mapOrderStats(rs);
+            }
+        });
+    }
+
+    // Параметры ORDER_STATS_RANGE_SQL для непустого интервала [from, to): границы суток, часов и неполных часов
+    static LocalDateTime[] orderStatsBounds(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime hourStart = ceil(from, ChronoUnit.HOURS);
+        LocalDateTime hourEnd = to.truncatedTo(ChronoUnit.HOURS);
+        // Пустой отрезок задается как [x, x)
+        LocalDateTime[] raw;
+        LocalDateTime[] hours;
+        LocalDateTime[] days;
+        if (!hourStart.isBefore(hourEnd)) {
+            raw = new LocalDateTime[]{from, to, to, to};
+            hours = new LocalDateTime[]{to, to, to, to};
+            days = new LocalDateTime[]{to, to};
+        } else {
+            raw = new LocalDateTime[]{from, hourStart, hourEnd, to};
+            LocalDateTime dayStart = ceil(hourStart, ChronoUnit.DAYS);
+            LocalDateTime dayEnd = hourEnd.truncatedTo(ChronoUnit.DAYS);
+            if (dayStart.isBefore(dayEnd)) {
+                hours = new LocalDateTime[]{hourStart, dayStart, dayEnd, hourEnd};
+                days = new LocalDateTime[]{dayStart, dayEnd};
+            } else {
+                hours = new LocalDateTime[]{hourStart, hourEnd, hourEnd, hourEnd};
+                days = new LocalDateTime[]{hourEnd, hourEnd};
             }
         }
+        LocalDateTime[] bounds = new LocalDateTime[10];
+        System.arraycopy(days, 0, bounds, 0, 2);
+        System.arraycopy(hours, 0, bounds, 2, 4);
+        System.arraycopy(raw, 0, bounds, 6, 4);
+        return bounds;
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    private static OrderStats mapOrderStats(ResultSet rs) throws SQLException {
+        Timestamp first = rs.getTimestamp(3);
+        Timestamp last = rs.getTimestamp(4);
+        return new OrderStats(rs.getLong(1), rs.getBigDecimal(2),
+                first != null ? first.toLocalDateTime() : null,
+                last != null ? last.toLocalDateTime() : null);
     }
 
     public boolean updateProductPrice(Long productId, java.math.BigDecimal newPrice) throws SQLException {
-        String sql = "UPDATE products SET price = ? WHERE id = ?";
+        return metrics.time("updateProductPrice", () -> {
+            String sql = "UPDATE products SET price = ? WHERE id = ?";
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setBigDecimal(1, newPrice);
-            stmt.setLong(2, productId);
-            return stmt.executeUpdate() > 0;
-        }
+                stmt.setBigDecimal(1, newPrice);
+                stmt.setLong(2, productId);
+                return stmt.executeUpdate() > 0;
+            } finally {
+                productCache.invalidate(productId);
+            }
+        });
     }
 
     public boolean updateProductQuantity(Long productId, Integer newQuantity) throws SQLException {
-        String sql = "UPDATE products SET quantity = ? WHERE id = ?";
+        return metrics.time("updateProductQuantity", () -> {
+            InventoryLedger ledger = inventoryLedger;
+            if (ledger != null) {
+                try {
+                    return ledger.setQuantity(productId, newQuantity);
+                } finally {
+                    productCache.invalidate(productId);
+                }
+            }
+            String sql = "UPDATE products SET quantity = ? WHERE id = ?";
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setInt(1, newQuantity);
-            stmt.setLong(2, productId);
-            return stmt.executeUpdate() > 0;
-        }
+                stmt.setInt(1, newQuantity);
+                stmt.setLong(2, productId);
+                return stmt.executeUpdate() > 0;
+            } finally {
+                productCache.invalidate(productId);
+            }
+        });
     }
 
-    public void printPopularProducts() throws SQLException {
-        String sql = """
-            SELECT p.name, p.category, 
-                   SUM(o.quantity) as total_sold,
-                   SUM(o.total_amount) as total_revenue
-            FROM products p
-            JOIN orders o ON p.id = o.product_id
-            GROUP BY p.id, p.name, p.category
-            ORDER BY total_sold DESC
-            LIMIT 5
-            """;
+    // Самые продаваемые товары - верх индекса idx_product_sales_units
+    public List<ProductSales> getPopularProducts(int limit) throws SQLException {
+        return metrics.time("getPopularProducts", () -> {
+            String sql = """
+                SELECT p.id, p.name, p.category, s.units_sold, s.revenue
+                FROM product_sales s
+                JOIN products p ON p.id = s.product_id
+                WHERE s.units_sold > 0
+                ORDER BY s.units_sold DESC
+                LIMIT ?
+                """;
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, limit);
+                ResultSet rs = stmt.executeQuery();
 
-            System.out.println("\n ПОПУЛЯРНЫЕ ТОВАРЫ:");
-            while (rs.next()) {
-                System.out.printf("Товар: %s | Категория: %s | Продано: %d | Выручка: %.2f%n",
-                        rs.getString("name"),
-                        rs.getString("category"),
-                        rs.getInt("total_sold"),
-                        rs.getBigDecimal("total_revenue"));
+                List<ProductSales> result = new ArrayList<>(limit);
+                while (rs.next()) {
+                    result.add(new ProductSales(rs.getLong("id"), rs.getString("name"), rs.getString("category"),
+                            rs.getLong("units_sold"), rs.getBigDecimal("revenue")));
+                }
+                metrics.recordRowsFetched(result.size());
+                return result;
             }
+        });
+    }
+
+    public void printPopularProducts() throws SQLException {
+        System.out.println("\n ПОПУЛЯРНЫЕ ТОВАРЫ:");
+        for (ProductSales sales : getPopularProducts(5)) {
+            System.out.printf("Товар: %s | Категория: %s | Продано: %d | Выручка: %.2f%n",
+                    sales.getName(), sales.getCategory(), sales.getUnitsSold(), sales.getRevenue());
         }
     }
-}
\ No newline at end of file
+}
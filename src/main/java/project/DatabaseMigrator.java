@@ -1,8 +1,61 @@
 package project;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DatabaseMigrator {
+    private static final int PARTITIONING_VERSION = 13;
+
+    // Тестовые данные
+    private static final String SEED_ORDER_STATUS = """
+        INSERT INTO order_status (name) VALUES
+            ('Новый'), ('Подтвержден'), ('В обработке'), ('Отправлен'), ('Доставлен'), ('Отменен')
+        ON CONFLICT (name) DO NOTHING
+        """;
+
+    private static final String SEED_PRODUCTS = """
+        INSERT INTO products (name, description, price, quantity, category) VALUES
+            ('Ноутбук Lenovo IdeaPad', '15-дюймовый ноутбук с процессором Intel i5', 45000.00, 15, 'Электроника'),
+            ('Смартфон Samsung Galaxy', 'Смартфон с AMOLED дисплеем 6.1"', 35000.00, 25, 'Электроника'),
+            ('Наушники Sony WH-1000XM4', 'Беспроводные наушники с шумоподавлением', 25000.00, 30, 'Электроника'),
+            ('Книга "Java для начинающих"', 'Учебник по программированию на Java', 1500.00, 50, 'Книги'),
+            ('Кофемашина DeLonghi', 'Автоматическая кофемашина для дома', 30000.00, 10, 'Бытовая техника'),
+            ('Футболка хлопковая', 'Хлопковая футболка унисекс', 1200.00, 100, 'Одежда'),
+            ('Кроссовки Nike Air Max', 'Спортивные кроссовки для бега', 8000.00, 40, 'Обувь'),
+            ('Чайник электрический', 'Стеклянный электрочайник 1.7л', 2500.00, 35, 'Бытовая техника'),
+            ('Мышь беспроводная Logitech', 'Беспроводная компьютерная мышь', 1500.00, 60, 'Электроника'),
+            ('Монитор 24" Dell', 'Монитор с IPS матрицей 1920x1080', 20000.00, 20, 'Электроника')
+        """;
+
+    private static final String SEED_CUSTOMERS = """
+        INSERT INTO customers (first_name, last_name, phone, email) VALUES
+            ('Иван', 'Петров', '+79161234567', 'ivan.petrov@mail.ru'),
+            ('Мария', 'Сидорова', '+79167654321', 'maria.sidorova@mail.ru'),
+            ('Алексей', 'Козлов', '+79169998877', 'alex.kozlov@mail.ru'),
+            ('Елена', 'Новикова', '+79165554433', 'elena.novikova@mail.ru'),
+            ('Дмитрий', 'Волков', '+79162223344', 'dmitry.volkov@mail.ru'),
+            ('Ольга', 'Морозова', '+79163332211', 'olga.morozova@mail.ru'),
+            ('Сергей', 'Павлов', '+79164445566', 'sergey.pavlov@mail.ru'),
+            ('Анна', 'Лебедева', '+79167778899', 'anna.lebedeva@mail.ru'),
+            ('Михаил', 'Семенов', '+79168889900', 'mikhail.semenov@mail.ru'),
+            ('Наталья', 'Орлова', '+79161112233', 'natalia.orlova@mail.ru')
+        """;
+
+    private static final String SEED_ORDERS = """
+        INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount) VALUES
+            (1, 1, 1, 1, 45000.00),
+            (2, 2, 2, 1, 35000.00),
+            (3, 3, 3, 2, 50000.00),
+            (4, 4, 4, 3, 4500.00),
+            (5, 5, 5, 1, 30000.00),
+            (6, 6, 1, 5, 6000.00),
+            (7, 7, 2, 1, 8000.00),
+            (8, 8, 3, 2, 5000.00),
+            (9, 9, 4, 1, 1500.00),
+            (10, 10, 5, 1, 20000.00)
+        """;
+
     private final DatabaseManager dbManager;
 
     public DatabaseMigrator(DatabaseManager dbManager) {
@@ -13,102 +66,181 @@ public class DatabaseMigrator {
         System.out.println("Запуск миграций базы данных...");
 
         try {
-            // Создаем таблицы по одной с проверками
-            createTableOrderStatus();
-            createTableProducts();
-            createTableCustomers();
-            createTableOrders();
-            createIndexes();
-
-            // Вставляем данные с проверкой на существование
-            insertTestDataSafe();
-
+            int applied = new MigrationEngine(dbManager).migrate(migrations());
+            if (applied > 0) {
+                dbManager.getStatusDictionary().reload();
+            }
             System.out.println("Все миграции успешно завершены!");
 
         } catch (SQLException e) {
             System.err.println("Ошибка миграций: " + e.getMessage());
         }
+        // Секции наперед проверяются в фоне: актуальная схема при старте - один запрос к schema_version
+        if (dbManager.getBooleanProperty("db.orders.partitioned", false)) {
+            dbManager.schedulePartitionMaintenance(partitioning());
+        }
     }
 
-    private void createTableOrderStatus() throws SQLException {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS order_status (
-                id SERIAL PRIMARY KEY,
-                name VARCHAR(50) NOT NULL UNIQUE
-            )
-            """;
-        executeSQL(sql, "order_status");
+    // Шаги миграций по порядку версий. Примененный шаг менять нельзя - только добавлять новые.
+    // Индексы больших таблиц добавлять через indexBuilder().migration(...), а не CREATE INDEX в sql(...).
+    // Версия PARTITIONING_VERSION занята переносом orders в секции: он включается настройкой
+    // db.orders.partitioned и попадает в список только при ней, поэтому может примениться позже следующих версий.
+    List<MigrationEngine.Migration> migrations() {
+        List<MigrationEngine.Migration> migrations = new ArrayList<>(List.of(
+                MigrationEngine.sql(1, "Таблица order_status", """
+                    CREATE TABLE IF NOT EXISTS order_status (
+                        id SERIAL PRIMARY KEY,
+                        name VARCHAR(50) NOT NULL UNIQUE
+                    )
+                    """),
+                MigrationEngine.sql(2, "Таблица products", """
+                    CREATE TABLE IF NOT EXISTS products (
+                        id SERIAL PRIMARY KEY,
+                        name VARCHAR(100) NOT NULL,
+                        description TEXT,
+                        price DECIMAL(10,2) NOT NULL CHECK (price >= 0),
+                        quantity INTEGER NOT NULL CHECK (quantity >= 0),
+                        category VARCHAR(100),
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """),
+                MigrationEngine.sql(3, "Таблица customers", """
+                    CREATE TABLE IF NOT EXISTS customers (
+                        id SERIAL PRIMARY KEY,
+                        first_name VARCHAR(50) NOT NULL,
+                        last_name VARCHAR(50) NOT NULL,
+                        phone VARCHAR(20),
+                        email VARCHAR(100) UNIQUE,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """),
+                MigrationEngine.sql(4, "Таблица orders", """
+                    CREATE TABLE IF NOT EXISTS orders (
+                        id SERIAL PRIMARY KEY,
+                        product_id INTEGER NOT NULL,
+                        customer_id INTEGER NOT NULL,
+                        status_id INTEGER NOT NULL,
+                        quantity INTEGER NOT NULL CHECK (quantity > 0),
+                        total_amount DECIMAL(10,2) NOT NULL CHECK (total_amount >= 0),
+                        order_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        CONSTRAINT fk_order_product FOREIGN KEY (product_id) REFERENCES products(id),
+                        CONSTRAINT fk_order_customer FOREIGN KEY (customer_id) REFERENCES customers(id),
+                        CONSTRAINT fk_order_status FOREIGN KEY (status_id) REFERENCES order_status(id)
+                    )
+                    """),
+                // Журнал изменений остатков для InventoryLedger
+                MigrationEngine.sql(5, "Таблица inventory_journal", """
+                    CREATE TABLE IF NOT EXISTS inventory_journal (
+                        id BIGSERIAL PRIMARY KEY,
+                        product_id INTEGER NOT NULL REFERENCES products(id),
+                        delta INTEGER NOT NULL,
+                        order_id INTEGER,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """),
+                // Сводка продаж по товарам, обновляется вместе с заказами (см. OrderAggregates)
+                MigrationEngine.sql(6, "Таблица product_sales", """
+                    CREATE TABLE IF NOT EXISTS product_sales (
+                        product_id INTEGER PRIMARY KEY REFERENCES products(id),
+                        units_sold BIGINT NOT NULL DEFAULT 0,
+                        revenue DECIMAL(14,2) NOT NULL DEFAULT 0
+                    )
+                    """),
+                // Почасовые и посуточные свертки заказов для статистики по интервалам времени
+                MigrationEngine.sql(7, "Таблицы orders_hourly и orders_daily",
+                        rollupTableSql(OrderAggregates.HOURLY), rollupTableSql(OrderAggregates.DAILY)),
+                MigrationEngine.sql(8, "Индексы",
+                        "CREATE INDEX IF NOT EXISTS idx_products_category ON products(category)",
+                        "CREATE INDEX IF NOT EXISTS idx_customers_email ON customers(email)",
+                        "CREATE INDEX IF NOT EXISTS idx_inventory_journal_product ON inventory_journal(product_id)",
+                        // Топ товаров по продажам
+                        "CREATE INDEX IF NOT EXISTS idx_product_sales_units ON product_sales(units_sold DESC)"),
+                MigrationEngine.code(9, "Тестовые данные",
+                        String.join("\n;\n", SEED_ORDER_STATUS, SEED_PRODUCTS, SEED_CUSTOMERS, SEED_ORDERS),
+                        this::insertTestDataSafe),
+                // Первичное заполнение сводок для заказов, созданных до их появления
+                MigrationEngine.sql(10, "Заполнение сводок по существующим заказам", """
+                    INSERT INTO product_sales (product_id, units_sold, revenue)
+                    SELECT product_id, sum(quantity), sum(total_amount)
+                    FROM orders
+                    GROUP BY product_id
+                    ON CONFLICT (product_id) DO NOTHING
+                    """, rollupBackfillSql(OrderAggregates.HOURLY, "hour"), rollupBackfillSql(OrderAggregates.DAILY, "day")),
+                // orders - самая большая таблица: индексы строятся без блокировки записи
+                indexBuilder().migration(11, "Индексы orders (онлайн)",
+                        new OnlineIndexBuilder.Index("idx_orders_product_id", "orders", "product_id"),
+                        new OnlineIndexBuilder.Index("idx_orders_customer_id", "orders", "customer_id"),
+                        new OnlineIndexBuilder.Index("idx_orders_status_id", "orders", "status_id"),
+                        new OnlineIndexBuilder.Index("idx_orders_date", "orders", "order_date"),
+                        // Keyset-пагинация ленты заказов по (order_date, id)
+                        new OnlineIndexBuilder.Index("idx_orders_date_id", "orders", "order_date DESC, id DESC")),
+                // Несколько строк на интервал сверток: запись текущего часа не упирается в одну строку
+                MigrationEngine.sql(12, "Слоты в свертках orders_hourly и orders_daily",
+                        rollupSlotColumnSql(OrderAggregates.HOURLY), rollupSlotKeySql(OrderAggregates.HOURLY),
+                        rollupSlotColumnSql(OrderAggregates.DAILY), rollupSlotKeySql(OrderAggregates.DAILY))
+        ));
+        if (dbManager.getBooleanProperty("db.orders.partitioned", false)) {
+            migrations.add(partitioning().migration(PARTITIONING_VERSION, "Секционирование orders по месяцам"));
+        }
+        return migrations;
     }
 
-    private void createTableProducts() throws SQLException {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS products (
-                id SERIAL PRIMARY KEY,
-                name VARCHAR(100) NOT NULL,
-                description TEXT,
-                price DECIMAL(10,2) NOT NULL CHECK (price >= 0),
-                quantity INTEGER NOT NULL CHECK (quantity >= 0),
-                category VARCHAR(100),
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    private static String rollupTableSql(String table) {
+        return """
+            CREATE TABLE IF NOT EXISTS %s (
+                bucket_start TIMESTAMP PRIMARY KEY,
+                order_count BIGINT NOT NULL DEFAULT 0,
+                revenue DECIMAL(16,2) NOT NULL DEFAULT 0,
+                first_order TIMESTAMP,
+                last_order TIMESTAMP
             )
-            """;
-        executeSQL(sql, "products");
+            """.formatted(table);
     }
 
-    private void createTableCustomers() throws SQLException {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS customers (
-                id SERIAL PRIMARY KEY,
-                first_name VARCHAR(50) NOT NULL,
-                last_name VARCHAR(50) NOT NULL,
-                phone VARCHAR(20),
-                email VARCHAR(100) UNIQUE,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-            )
-            """;
-        executeSQL(sql, "customers");
+    private static String rollupSlotColumnSql(String table) {
+        return "ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS slot SMALLINT NOT NULL DEFAULT 0";
     }
 
-    private void createTableOrders() throws SQLException {
-        // Сначала создаем без foreign keys
-        String sql = """
-            CREATE TABLE IF NOT EXISTS orders (
-                id SERIAL PRIMARY KEY,
-                product_id INTEGER NOT NULL,
-                customer_id INTEGER NOT NULL,
-                status_id INTEGER NOT NULL,
-                quantity INTEGER NOT NULL CHECK (quantity > 0),
-                total_amount DECIMAL(10,2) NOT NULL CHECK (total_amount >= 0),
-                order_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-            )
-            """;
-        executeSQL(sql, "orders");
+    private static String rollupSlotKeySql(String table) {
+        return "ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + table + "_pkey, ADD PRIMARY KEY (bucket_start, slot)";
+    }
 
-        // Потом добавляем foreign keys
-        addForeignKey("orders", "product_id", "products", "id", "fk_order_product");
-        addForeignKey("orders", "customer_id", "customers", "id", "fk_order_customer");
-        addForeignKey("orders", "status_id", "order_status", "id", "fk_order_status");
+    private static String rollupBackfillSql(String table, String unit) {
+        return """
+            INSERT INTO %s (bucket_start, order_count, revenue, first_order, last_order)
+            SELECT date_trunc('%s', order_date), count(*), sum(total_amount), min(order_date), max(order_date)
+            FROM orders
+            WHERE order_date IS NOT NULL
+            GROUP BY 1
+            ON CONFLICT (bucket_start) DO NOTHING
+            """.formatted(table, unit);
     }
 
-    private void createIndexes() throws SQLException {
-        String[] indexes = {
-                "CREATE INDEX IF NOT EXISTS idx_orders_product_id ON orders(product_id)",
-                "CREATE INDEX IF NOT EXISTS idx_orders_customer_id ON orders(customer_id)",
-                "CREATE INDEX IF NOT EXISTS idx_orders_status_id ON orders(status_id)",
-                "CREATE INDEX IF NOT EXISTS idx_orders_date ON orders(order_date)",
-                "CREATE INDEX IF NOT EXISTS idx_products_category ON products(category)",
-                "CREATE INDEX IF NOT EXISTS idx_customers_email ON customers(email)"
-        };
-
-        for (String index : indexes) {
-            executeSQL(index, "index");
+    // Проверка отсечения секций для запросов с фильтром по дате
+    public boolean verifyPartitionPruning() throws SQLException {
+        OrderPartitioning partitioning = partitioning();
+        if (!partitioning.isPartitioned()) {
+            System.out.println("Таблица orders не секционирована");
+            return false;
         }
-        System.out.println("Все индексы созданы/проверены");
+        return partitioning.verifyPartitionPruning();
     }
 
-    private void insertTestDataSafe() throws SQLException {
-        try (Connection conn = dbManager.getConnection();
-             Statement stmt = conn.createStatement()) {
+    // Перестройка невалидных индексов, оставшихся после прерванных CONCURRENTLY-операций
+    public int repairInvalidIndexes() throws SQLException {
+        return indexBuilder().repairInvalidIndexes();
+    }
+
+    private OnlineIndexBuilder indexBuilder() {
+        return new OnlineIndexBuilder(dbManager, dbManager.getLongProperty("db.migrations.indexProgressIntervalMs", 2000));
+    }
+
+    private OrderPartitioning partitioning() {
+        return new OrderPartitioning(dbManager, dbManager.getIntProperty("db.orders.futurePartitions", 3));
+    }
+
+    private void insertTestDataSafe(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
 
             // Проверяем, есть ли уже данные в таблицах
             if (!hasData(conn, "order_status")) {
@@ -145,12 +277,7 @@ public class DatabaseMigrator {
     }
 
     private void insertOrderStatusData(Statement stmt) throws SQLException {
-        String sql = """
-            INSERT INTO order_status (name) VALUES 
-                ('Новый'), ('Подтвержден'), ('В обработке'), ('Отправлен'), ('Доставлен'), ('Отменен')
-            ON CONFLICT (name) DO NOTHING
-            """;
-        stmt.execute(sql);
+        stmt.execute(SEED_ORDER_STATUS);
         System.out.println("Данные order_status добавлены");
     }
 
@@ -163,20 +290,7 @@ public class DatabaseMigrator {
             System.out.println("Не удалось очистить products: " + e.getMessage());
         }
 
-        String sql = """
-            INSERT INTO products (name, description, price, quantity, category) VALUES
-                ('Ноутбук Lenovo IdeaPad', '15-дюймовый ноутбук с процессором Intel i5', 45000.00, 15, 'Электроника'),
-                ('Смартфон Samsung Galaxy', 'Смартфон с AMOLED дисплеем 6.1"', 35000.00, 25, 'Электроника'),
-                ('Наушники Sony WH-1000XM4', 'Беспроводные наушники с шумоподавлением', 25000.00, 30, 'Электроника'),
-                ('Книга "Java для начинающих"', 'Учебник по программированию на Java', 1500.00, 50, 'Книги'),
-                ('Кофемашина DeLonghi', 'Автоматическая кофемашина для дома', 30000.00, 10, 'Бытовая техника'),
-                ('Футболка хлопковая', 'Хлопковая футболка унисекс', 1200.00, 100, 'Одежда'),
-                ('Кроссовки Nike Air Max', 'Спортивные кроссовки для бега', 8000.00, 40, 'Обувь'),
-                ('Чайник электрический', 'Стеклянный электрочайник 1.7л', 2500.00, 35, 'Бытовая техника'),
-                ('Мышь беспроводная Logitech', 'Беспроводная компьютерная мышь', 1500.00, 60, 'Электроника'),
-                ('Монитор 24" Dell', 'Монитор с IPS матрицей 1920x1080', 20000.00, 20, 'Электроника')
-            """;
-        stmt.execute(sql);
+        stmt.execute(SEED_PRODUCTS);
         System.out.println("Данные products добавлены (10 записей)");
     }
 
@@ -189,20 +303,7 @@ public class DatabaseMigrator {
             System.out.println("Не удалось очистить customers: " + e.getMessage());
         }
 
-        String sql = """
-            INSERT INTO customers (first_name, last_name, phone, email) VALUES
-                ('Иван', 'Петров', '+79161234567', 'ivan.petrov@mail.ru'),
-                ('Мария', 'Сидорова', '+79167654321', 'maria.sidorova@mail.ru'),
-                ('Алексей', 'Козлов', '+79169998877', 'alex.kozlov@mail.ru'),
-                ('Елена', 'Новикова', '+79165554433', 'elena.novikova@mail.ru'),
-                ('Дмитрий', 'Волков', '+79162223344', 'dmitry.volkov@mail.ru'),
-                ('Ольга', 'Морозова', '+79163332211', 'olga.morozova@mail.ru'),
-                ('Сергей', 'Павлов', '+79164445566', 'sergey.pavlov@mail.ru'),
-                ('Анна', 'Лебедева', '+79167778899', 'anna.lebedeva@mail.ru'),
-                ('Михаил', 'Семенов', '+79168889900', 'mikhail.semenov@mail.ru'),
-                ('Наталья', 'Орлова', '+79161112233', 'natalia.orlova@mail.ru')
-            """;
-        stmt.execute(sql);
+        stmt.execute(SEED_CUSTOMERS);
         System.out.println("Данные customers добавлены (10 записей)");
     }
 
@@ -215,44 +316,10 @@ public class DatabaseMigrator {
             System.out.println("Не удалось очистить orders: " + e.getMessage());
         }
 
-        String sql = """
-            INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount) VALUES
-                (1, 1, 1, 1, 45000.00),
-                (2, 2, 2, 1, 35000.00),
-                (3, 3, 3, 2, 50000.00),
-                (4, 4, 4, 3, 4500.00),
-                (5, 5, 5, 1, 30000.00),
-                (6, 6, 1, 5, 6000.00),
-                (7, 7, 2, 1, 8000.00),
-                (8, 8, 3, 2, 5000.00),
-                (9, 9, 4, 1, 1500.00),
-                (10, 10, 5, 1, 20000.00)
-            """;
-        stmt.execute(sql);
+        stmt.execute(SEED_ORDERS);
         System.out.println("Данные orders добавлены (10 записей)");
     }
 
-    private void executeSQL(String sql, String operation) throws SQLException {
-        try (Connection conn = dbManager.getConnection();
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-            System.out.println(" " + operation + " - выполнено");
-        } catch (SQLException e) {
-            // Игнорируем ошибки "уже существует"
-            if (e.getMessage().contains("already exists") || e.getMessage().contains("существует")) {
-                System.out.println(" " + operation + " - уже существует");
-            } else {
-                throw e;
-            }
-        }
-    }
-
-    private void addForeignKey(String table, String column, String refTable, String refColumn, String constraintName) throws SQLException {
-        String sql = "ALTER TABLE " + table + " ADD CONSTRAINT " + constraintName +
-                " FOREIGN KEY (" + column + ") REFERENCES " + refTable + "(" + refColumn + ")";
-        executeSQL(sql, "Foreign key " + constraintName);
-    }
-
     public boolean checkDatabaseReady() {
         try (Connection conn = dbManager.getConnection();
              Statement stmt = conn.createStatement()) {
@@ -316,6 +383,10 @@ public class DatabaseMigrator {
             System.out.println("Принудительный сброс данных...");
 
             // Очищаем таблицы в правильном порядке
+            stmt.execute("DELETE FROM inventory_journal");
+            stmt.execute("DELETE FROM product_sales");
+            stmt.execute("DELETE FROM orders_hourly");
+            stmt.execute("DELETE FROM orders_daily");
             stmt.execute("DELETE FROM orders");
             stmt.execute("DELETE FROM customers");
             stmt.execute("DELETE FROM products");
@@ -330,7 +401,9 @@ public class DatabaseMigrator {
             System.out.println("Все данные сброшены, sequences перезапущены");
 
             // Заполняем данные заново
-            insertTestDataSafe();
+            insertTestDataSafe(conn);
+            OrderAggregates.rebuild(conn);
+            dbManager.getStatusDictionary().reload();
 
         } catch (SQLException e) {
             System.err.println("Ошибка при сбросе данных: " + e.getMessage());
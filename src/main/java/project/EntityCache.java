@@ -0,0 +1,368 @@
+package project;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// Ограниченный кэш сущностей с ключом long (без упаковки в Long).
+// Данные разбиты на сегменты с открытой адресацией; вытеснение по алгоритму CLOCK,
+// записи живут не дольше ttl. Отсутствующие в БД ID тоже кэшируются (на negativeTtl).
+// Возвращаемые объекты общие для всех вызывающих - изменять их нельзя.
+public class EntityCache<V> {
+    private static final int SEGMENTS = 16;
+    private static final Object ABSENT = new Object();
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load(long key) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface MultiLoader<V> {
+        // Возвращает найденные значения; ключи, которых нет в результате, считаются отсутствующими
+        Map<Long, V> loadAll(long[] keys) throws SQLException;
+    }
+
+    private final String name;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public EntityCache(String name, int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.name = name;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000L;
+        int perSegment = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment, evictions, expirations);
+        }
+    }
+
+    // Чтение через кэш: при промахе значение загружается loader'ом и запоминается (null - как отсутствующее)
+    public V get(long key, Loader<V> loader) throws SQLException {
+        Segment segment = segmentFor(key);
+        Object cached = segment.get(key);
+        if (cached != null) {
+            return hit(cached);
+        }
+
+        misses.increment();
+        long version = segment.version();
+        long start = System.nanoTime();
+        V value = loader.load(key);
+        loadNanos.add(System.nanoTime() - start);
+        loads.increment();
+
+        segment.putIfUnchanged(key, value == null ? ABSENT : value, expiry(value), version);
+        return value;
+    }
+
+    // Множественное чтение: из БД загружаются только промахи, одним вызовом loader'а
+    public Map<Long, V> getAll(Collection<Long> keys, MultiLoader<V> loader) throws SQLException {
+        Map<Long, V> result = new HashMap<>(keys.size() * 2);
+        long[] missing = new long[keys.size()];
+        int missingCount = 0;
+        Set<Long> seen = new HashSet<>(keys.size() * 2);
+
+        for (Long key : keys) {
+            if (key == null || !seen.add(key)) {
+                continue;
+            }
+            Object cached = segmentFor(key).get(key);
+            if (cached == null) {
+                missing[missingCount++] = key;
+            } else {
+                V value = hit(cached);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+        }
+        if (missingCount == 0) {
+            return result;
+        }
+
+        misses.add(missingCount);
+        long[] versions = new long[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            versions[i] = segments[i].version();
+        }
+        long start = System.nanoTime();
+        Map<Long, V> loaded = loader.loadAll(Arrays.copyOf(missing, missingCount));
+        loadNanos.add(System.nanoTime() - start);
+        loads.increment();
+
+        for (int i = 0; i < missingCount; i++) {
+            long key = missing[i];
+            V value = loaded.get(key);
+            int index = segmentIndex(key);
+            segments[index].putIfUnchanged(key, value == null ? ABSENT : value, expiry(value), versions[index]);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    public void put(long key, V value) {
+        segmentFor(key).put(key, value == null ? ABSENT : value, expiry(value));
+    }
+
+    public void invalidate(long key) {
+        segmentFor(key).remove(key);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V hit(Object cached) {
+        hits.increment();
+        if (cached == ABSENT) {
+            negativeHits.increment();
+            return null;
+        }
+        return (V) cached;
+    }
+
+    private long expiry(V value) {
+        return System.nanoTime() + (value == null ? negativeTtlNanos : ttlNanos);
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[segmentIndex(key)];
+    }
+
+    // Пакетная видимость - для подбора сталкивающихся ключей в EntityCacheCheck
+    static int segmentIndex(long key) {
+        return (int) (mix(key) >>> 60) & (SEGMENTS - 1);
+    }
+
+    static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public Stats getStats() {
+        return new Stats(name, size(), hits.sum(), negativeHits.sum(), misses.sum(),
+                evictions.sum(), expirations.sum(), loads.sum(), loadNanos.sum());
+    }
+
+    // Сегмент: открытая адресация с линейным пробированием, удаление со сдвигом назад (без tombstone)
+    private static final class Segment {
+        private final LongAdder evictions;
+        private final LongAdder expirations;
+        private final int capacity;
+        private final int mask;
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] expiresAt;
+        private final boolean[] referenced;
+        private int size;
+        private int clockHand;
+        // Увеличивается при каждом удалении/очистке: загрузка, начатая до инвалидации, не попадет в кэш
+        private long version;
+
+        private Segment(int capacity, LongAdder evictions, LongAdder expirations) {
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.capacity = capacity;
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.mask = tableSize - 1;
+            this.keys = new long[tableSize];
+            this.values = new Object[tableSize];
+            this.expiresAt = new long[tableSize];
+            this.referenced = new boolean[tableSize];
+        }
+
+        synchronized Object get(long key) {
+            int slot = find(key);
+            if (slot < 0) {
+                return null;
+            }
+            if (expiresAt[slot] - System.nanoTime() <= 0) {
+                expirations.increment();
+                delete(slot);
+                return null;
+            }
+            referenced[slot] = true;
+            return values[slot];
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized void putIfUnchanged(long key, Object value, long expires, long expectedVersion) {
+            if (version == expectedVersion) {
+                put(key, value, expires);
+            }
+        }
+
+        synchronized void put(long key, Object value, long expires) {
+            int slot = find(key);
+            if (slot < 0) {
+                if (size >= capacity) {
+                    evictOne();
+                }
+                slot = (int) mix(key) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+            expiresAt[slot] = expires;
+            referenced[slot] = false;
+        }
+
+        synchronized void remove(long key) {
+            version++;
+            int slot = find(key);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized void clear() {
+            version++;
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private int find(long key) {
+            int slot = (int) mix(key) & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // CLOCK: обходим слоты, снимая флаг обращения; вытесняем первую запись без флага
+        private void evictOne() {
+            long now = System.nanoTime();
+            while (true) {
+                int slot = clockHand;
+                clockHand = (clockHand + 1) & mask;
+                if (values[slot] == null) {
+                    continue;
+                }
+                if (expiresAt[slot] - now <= 0) {
+                    expirations.increment();
+                } else if (referenced[slot]) {
+                    referenced[slot] = false;
+                    continue;
+                } else {
+                    evictions.increment();
+                }
+                delete(slot);
+                return;
+            }
+        }
+
+        // Удаление со сдвигом: переносим последующие записи цепочки на освободившееся место
+        private void delete(int slot) {
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (values[next] != null) {
+                int home = (int) mix(keys[next]) & mask;
+                // Запись можно перенести в hole, если hole лежит между ее домашним слотом и текущей позицией
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    expiresAt[hole] = expiresAt[next];
+                    referenced[hole] = referenced[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[hole] = null;
+            referenced[hole] = false;
+            size--;
+        }
+    }
+
+    public static class Stats {
+        private final String name;
+        private final int size;
+        private final long hits;
+        private final long negativeHits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long loads;
+        private final long loadNanos;
+
+        Stats(String name, int size, long hits, long negativeHits, long misses,
+              long evictions, long expirations, long loads, long loadNanos) {
+            this.name = name;
+            this.size = size;
+            this.hits = hits;
+            this.negativeHits = negativeHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.loads = loads;
+            this.loadNanos = loadNanos;
+        }
+
+        public String getName() { return name; }
+        public int getSize() { return size; }
+        public long getHits() { return hits; }
+        public long getNegativeHits() { return negativeHits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getExpirations() { return expirations; }
+        public long getLoads() { return loads; }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        public double getAvgLoadMillis() {
+            return loads == 0 ? 0 : loadNanos / 1_000_000.0 / loads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache[%s: размер %d, попаданий %.1f%% (%d, из них отсутствующих %d), промахов %d, " +
+                            "вытеснено %d, истекло %d, ср. загрузка %.3f мс]",
+                    name, size, getHitRate() * 100, hits, negativeHits, misses,
+                    evictions, expirations, getAvgLoadMillis());
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package project;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+// Детерминированная проверка EntityCache без БД: вставка и чтение, удаление со сдвигом цепочки
+// и повторный поиск, вытеснение CLOCK, истечение ttl и инвалидация во время загрузки.
+// Ключи подбираются по хешу так, чтобы попадать в один сегмент и в один домашний слот.
+// Запуск: mvn exec:java -Dexec.args="cache-check"
+public class EntityCacheCheck {
+    // При maxSize = 1024 в сегменте 64 записи и таблица на 128 слотов
+    private static final int LARGE_CACHE = 1024;
+    private static final int LARGE_TABLE_MASK = 127;
+    // При maxSize = 64 в сегменте 4 записи
+    private static final int SMALL_CACHE = 64;
+    private static final int SMALL_SEGMENT_CAPACITY = 4;
+    private static final long TTL_MS = 60_000;
+
+    private final List<String> failures = new ArrayList<>();
+    private int checks;
+
+    public boolean run() throws Exception {
+        checkInsertAndGet();
+        checkDeleteAndReprobe();
+        checkModel();
+        checkClockEviction();
+        checkExpiration();
+        checkInvalidateDuringLoad();
+        checkInvalidateDuringLoadAll();
+        checkConcurrentInvalidateDuringLoad();
+
+        System.out.printf("Проверок EntityCache: %d, ошибок: %d%n", checks, failures.size());
+        failures.forEach(failure -> System.out.println(" ОШИБКА: " + failure));
+        return failures.isEmpty();
+    }
+
+    // Все вставленные ключи читаются из кэша без загрузки, в том числе длинная цепочка одного слота
+    private void checkInsertAndGet() throws SQLException {
+        EntityCache<String> cache = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        long[] chain = keys(8, key -> EntityCache.segmentIndex(key) == 0 && home(key) == 5);
+        for (long key : chain) {
+            cache.put(key, "v" + key);
+        }
+        for (long key : chain) {
+            expect(("v" + key).equals(cachedValue(cache, key)), "ключ " + key + " цепочки не найден после вставки");
+        }
+        expect(cache.size() == chain.length, "размер " + cache.size() + " вместо " + chain.length);
+    }
+
+    // Удаление из середины цепочки сдвигает хвост: оставшиеся ключи (и ключи соседнего домашнего
+    // слота, чья цепочка продолжается в той же серии) должны находиться, удаленные - нет
+    private void checkDeleteAndReprobe() throws SQLException {
+        EntityCache<String> cache = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        long[] first = keys(5, key -> EntityCache.segmentIndex(key) == 0 && home(key) == LARGE_TABLE_MASK - 1);
+        // Серия переходит через конец таблицы: домашний слот 0 после слотов 126 и 127
+        long[] wrapped = keys(3, key -> EntityCache.segmentIndex(key) == 0 && home(key) == 0);
+        for (long key : first) {
+            cache.put(key, "v" + key);
+        }
+        for (long key : wrapped) {
+            cache.put(key, "v" + key);
+        }
+
+        cache.invalidate(first[1]);
+        cache.invalidate(first[3]);
+        cache.invalidate(wrapped[0]);
+
+        for (int i = 0; i < first.length; i++) {
+            boolean deleted = i == 1 || i == 3;
+            Object value = cachedValue(cache, first[i]);
+            expect(deleted ? value == null : ("v" + first[i]).equals(value),
+                    "ключ " + first[i] + (deleted ? " найден после удаления" : " потерян после удаления соседа"));
+        }
+        expect(cachedValue(cache, wrapped[0]) == null, "ключ " + wrapped[0] + " найден после удаления");
+        for (int i = 1; i < wrapped.length; i++) {
+            expect(("v" + wrapped[i]).equals(cachedValue(cache, wrapped[i])),
+                    "ключ " + wrapped[i] + " потерян после удаления в серии через конец таблицы");
+        }
+
+        // Запись в своем домашнем слоте сразу за цепочкой не должна сдвигаться в освободившийся слот:
+        // цепочка ключей слота 40 занимает 40-41, ключ слота 42 стоит на месте
+        EntityCache<String> shifted = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        long[] chain = keys(2, key -> EntityCache.segmentIndex(key) == 0 && home(key) == 40);
+        long settled = keys(1, key -> EntityCache.segmentIndex(key) == 0 && home(key) == 42)[0];
+        for (long key : chain) {
+            shifted.put(key, "v" + key);
+        }
+        shifted.put(settled, "v" + settled);
+        shifted.invalidate(chain[0]);
+        expect(("v" + chain[1]).equals(cachedValue(shifted, chain[1])), "ключ " + chain[1] + " не сдвинут в домашний слот");
+        expect(("v" + settled).equals(cachedValue(shifted, settled)),
+                "ключ " + settled + " перенесен раньше своего домашнего слота");
+    }
+
+    // Случайная (с фиксированным seed) последовательность put / invalidate / get против модели.
+    // Кэш больше набора ключей и ничего не вытесняет, поэтому чтение должно возвращать текущее
+    // значение «БД», а ключ, записанный или прочитанный после последней инвалидации, - не загружаться.
+    private void checkModel() throws SQLException {
+        // 256 записей на сегмент (таблица на 512 слотов) при ~190 ключах на сегмент - длинные серии
+        EntityCache<String> cache = new EntityCache<>("check", 4096, TTL_MS, TTL_MS);
+        Map<Long, String> database = new HashMap<>();
+        Set<Long> cached = new HashSet<>();
+        SplittableRandom random = new SplittableRandom(42);
+        int mismatches = 0;
+        int lost = 0;
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextLong(3_000);
+            int op = random.nextInt(10);
+            if (op < 2) {
+                // Изменение в БД с инвалидацией, как в DatabaseManager.updateProduct*
+                String value = "v" + i;
+                database.put(key, value);
+                cache.invalidate(key);
+                cached.remove(key);
+            } else if (op < 3) {
+                database.remove(key);
+                cache.invalidate(key);
+                cached.remove(key);
+            } else if (op < 4) {
+                // Запись в кэш после вставки в БД
+                String value = "v" + i;
+                database.put(key, value);
+                cache.put(key, value);
+                cached.add(key);
+            } else {
+                boolean[] loaded = new boolean[1];
+                String value = cache.get(key, k -> {
+                    loaded[0] = true;
+                    return database.get(k);
+                });
+                if (value == null ? database.get(key) != null : !value.equals(database.get(key))) {
+                    mismatches++;
+                }
+                if (loaded[0] && !cached.add(key)) {
+                    lost++;
+                }
+            }
+        }
+        expect(mismatches == 0, "расхождений с моделью: " + mismatches);
+        expect(lost == 0, "потеряно записей (повторная загрузка без инвалидации): " + lost);
+        expect(cache.getStats().getEvictions() == 0, "вытеснение при кэше больше набора ключей");
+    }
+
+    // CLOCK: при переполнении вытесняется запись, к которой не было обращений
+    private void checkClockEviction() throws SQLException {
+        EntityCache<String> cache = new EntityCache<>("check", SMALL_CACHE, TTL_MS, TTL_MS);
+        long[] segmentKeys = keys(SMALL_SEGMENT_CAPACITY + 1, key -> EntityCache.segmentIndex(key) == 3);
+        for (int i = 0; i < SMALL_SEGMENT_CAPACITY; i++) {
+            cache.put(segmentKeys[i], "v" + i);
+        }
+        long cold = segmentKeys[SMALL_SEGMENT_CAPACITY - 1];
+        for (int i = 0; i < SMALL_SEGMENT_CAPACITY - 1; i++) {
+            cachedValue(cache, segmentKeys[i]);
+        }
+        cache.put(segmentKeys[SMALL_SEGMENT_CAPACITY], "new");
+
+        expect(cache.getStats().getEvictions() == 1, "вытеснено " + cache.getStats().getEvictions() + " вместо 1");
+        expect(cache.size() == SMALL_SEGMENT_CAPACITY, "размер " + cache.size() + " больше емкости сегмента");
+        for (int i = 0; i < SMALL_SEGMENT_CAPACITY - 1; i++) {
+            expect(cachedValue(cache, segmentKeys[i]) != null, "вытеснена запись с обращением: " + segmentKeys[i]);
+        }
+        expect("new".equals(cachedValue(cache, segmentKeys[SMALL_SEGMENT_CAPACITY])), "новая запись не найдена");
+        // Последним: промах запоминает отсутствующий ID и сам вытесняет запись
+        expect(cachedValue(cache, cold) == null, "вытеснена не запись без обращений");
+    }
+
+    // Запись с ttl = 0 истекает сразу; отсутствующий ID помнится negativeTtl
+    private void checkExpiration() throws SQLException {
+        EntityCache<String> expiring = new EntityCache<>("check", LARGE_CACHE, 0, TTL_MS);
+        expiring.put(1, "v");
+        expect(cachedValue(expiring, 1) == null, "запись не истекла при ttl = 0");
+
+        EntityCache<String> negative = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        int[] loads = new int[1];
+        for (int i = 0; i < 3; i++) {
+            negative.get(7, key -> {
+                loads[0]++;
+                return null;
+            });
+        }
+        expect(loads[0] == 1, "отсутствующий ID загружался " + loads[0] + " раз");
+    }
+
+    // Инвалидация между чтением из БД и записью в кэш: загруженное (уже устаревшее) значение
+    // не должно остаться в кэше
+    private void checkInvalidateDuringLoad() throws SQLException {
+        EntityCache<String> cache = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        String loaded = cache.get(11, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+        expect("stale".equals(loaded), "загрузка вернула " + loaded);
+        expect(cachedValue(cache, 11) == null, "устаревшее значение осталось после инвалидации во время загрузки");
+
+        cache.get(12, key -> {
+            cache.clear();
+            return "stale";
+        });
+        expect(cachedValue(cache, 12) == null, "устаревшее значение осталось после очистки во время загрузки");
+    }
+
+    private void checkInvalidateDuringLoadAll() throws SQLException {
+        EntityCache<String> cache = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        long invalidated = keys(1, key -> EntityCache.segmentIndex(key) == 2)[0];
+        long untouched = keys(1, key -> EntityCache.segmentIndex(key) == 9)[0];
+        cache.getAll(List.of(invalidated, untouched), keys -> {
+            cache.invalidate(invalidated);
+            Map<Long, String> result = new HashMap<>();
+            for (long key : keys) {
+                result.put(key, "v" + key);
+            }
+            return result;
+        });
+        expect(cachedValue(cache, invalidated) == null, "getAll сохранил значение, инвалидированное во время загрузки");
+        expect(("v" + untouched).equals(cachedValue(cache, untouched)), "getAll не сохранил значение другого сегмента");
+    }
+
+    // То же из другого потока: загрузка ждет, пока второй поток инвалидирует ключ
+    private void checkConcurrentInvalidateDuringLoad() throws Exception {
+        EntityCache<String> cache = new EntityCache<>("check", LARGE_CACHE, TTL_MS, TTL_MS);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> load = executor.submit(() -> cache.get(21, key -> {
+                loading.countDown();
+                try {
+                    if (!invalidated.await(10, TimeUnit.SECONDS)) {
+                        throw new SQLException("Инвалидация не дождалась загрузки");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException(e);
+                }
+                return "stale";
+            }));
+            expect(loading.await(10, TimeUnit.SECONDS), "загрузка не началась");
+            cache.invalidate(21);
+            invalidated.countDown();
+            load.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        expect(cachedValue(cache, 21) == null, "значение, инвалидированное другим потоком во время загрузки, осталось в кэше");
+    }
+
+    // Значение из кэша или null, если его там нет (loader вызывается только при промахе)
+    private static Object cachedValue(EntityCache<String> cache, long key) throws SQLException {
+        boolean[] missed = new boolean[1];
+        String value = cache.get(key, k -> {
+            missed[0] = true;
+            return null;
+        });
+        if (missed[0]) {
+            // Промах запомнился как отсутствующий ID - убираем, чтобы не влиять на следующие проверки
+            cache.invalidate(key);
+            return null;
+        }
+        return value;
+    }
+
+    private static int home(long key) {
+        return (int) EntityCache.mix(key) & LARGE_TABLE_MASK;
+    }
+
+    private static long[] keys(int count, LongPredicate filter) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            if (filter.test(key)) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    private void expect(boolean condition, String failure) {
+        checks++;
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+}
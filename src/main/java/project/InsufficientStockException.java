@@ -0,0 +1,23 @@
+package project;
+
+import java.sql.SQLException;
+
+// Заказ не оформлен: на складе меньше товара, чем запрошено
+public class InsufficientStockException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final long productId;
+    private final int requested;
+    private final int available;
+
+    public InsufficientStockException(long productId, int requested, int available) {
+        super("Недостаточно товара ID " + productId + " на складе: запрошено " + requested + ", доступно " + available);
+        this.productId = productId;
+        this.requested = requested;
+        this.available = available;
+    }
+
+    public long getProductId() { return productId; }
+    public int getRequested() { return requested; }
+    public int getAvailable() { return available; }
+}
@@ -0,0 +1,269 @@
+package project;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Резервирование остатков в памяти для "горячих" товаров.
+// Остаток каждого товара - AtomicLong, резерв и возврат выполняются CAS без блокировок.
+// Каждое изменение пишется в журнал inventory_journal (вместе с заказом, одним выражением),
+// а строка products обновляется периодически одним пакетным UPDATE по сумме дельт.
+// Инвариант: products.quantity + sum(inventory_journal.delta) = остаток в памяти.
+// Журнал переживает падение JVM: при старте невыгруженные дельты применяются к products.
+// Рассчитан на один экземпляр приложения, который изменяет остатки.
+public class InventoryLedger {
+    private final DatabaseManager dbManager;
+    private final long flushIntervalMs;
+    private final ConcurrentHashMap<Long, AtomicLong> available = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder reservations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedProducts = new LongAdder();
+
+    public InventoryLedger(DatabaseManager dbManager, long flushIntervalMs) {
+        this.dbManager = dbManager;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public synchronized void start() throws SQLException {
+        if (flusher != null) {
+            return;
+        }
+        int recovered = flush();
+        if (recovered > 0) {
+            System.out.println("Журнал остатков: применены невыгруженные изменения для " + recovered + " товаров");
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-ledger-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (SQLException e) {
+                System.err.println("Ошибка выгрузки журнала остатков: " + e.getMessage());
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            System.err.println("Ошибка выгрузки журнала остатков: " + e.getMessage());
+        }
+        flusher = null;
+    }
+
+    // Резерв в памяти + заказ и запись журнала одним выражением; строка products не блокируется
+    public Long placeOrder(long productId, long customerId, long statusId, int quantity) throws SQLException {
+        AtomicLong counter = counter(productId);
+        if (counter == null) {
+            throw new SQLException("Товар с ID " + productId + " не найден");
+        }
+        reserve(productId, counter, quantity);
+
+        String sql = """
+            WITH created AS (
+                INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount)
+                SELECT p.id, ?, ?, ?, p.price * ? FROM products p WHERE p.id = ?
+                RETURNING %s
+            ),
+            journaled AS (
+                INSERT INTO inventory_journal (product_id, delta, order_id)
+                SELECT product_id, -quantity, id FROM created
+            )
+            %s
+            SELECT id FROM created
+            """.formatted(OrderAggregates.CHANGED_COLUMNS, OrderAggregates.maintain("created", true));
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, customerId);
+            stmt.setLong(2, statusId);
+            stmt.setInt(3, quantity);
+            stmt.setInt(4, quantity);
+            stmt.setLong(5, productId);
+
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            undo(productId, counter, quantity, e);
+            throw e;
+        }
+        // Товара нет в products - заказ не записан, резерв возвращается
+        counter.addAndGet(quantity);
+        throw new SQLException("Товар с ID " + productId + " не найден");
+    }
+
+    // Возврат товара на склад (например, при отмене заказа)
+    public void release(long productId, int quantity) throws SQLException {
+        AtomicLong counter = counter(productId);
+        if (counter == null) {
+            throw new SQLException("Товар с ID " + productId + " не найден");
+        }
+        try {
+            journal(productId, quantity);
+        } catch (SQLException e) {
+            undo(productId, counter, 0, e);
+            throw e;
+        }
+        counter.addAndGet(quantity);
+    }
+
+    // Установка абсолютного остатка: в журнал пишется разница с текущим значением
+    public boolean setQuantity(long productId, int newQuantity) throws SQLException {
+        AtomicLong counter = counter(productId);
+        if (counter == null) {
+            return false;
+        }
+        long previous = counter.getAndSet(newQuantity);
+        try {
+            journal(productId, newQuantity - previous);
+        } catch (SQLException e) {
+            undo(productId, counter, previous - newQuantity, e);
+            throw e;
+        }
+        return true;
+    }
+
+    // Откат изменения счетчика после ошибки записи. Вернуть delta можно, только если выражение
+    // точно откатилось; при обрыве связи коммит мог пройти, и возврат резерва привел бы к продаже
+    // сверх остатка - тогда счетчик сбрасывается и загружается из БД при следующем обращении.
+    private void undo(long productId, AtomicLong counter, long delta, SQLException e) {
+        if (isRolledBack(e)) {
+            counter.addAndGet(delta);
+        } else {
+            available.remove(productId, counter);
+        }
+    }
+
+    // Классы SQLSTATE, при которых сервер отклонил выражение и ничего не зафиксировал:
+    // ошибки данных (22), нарушения ограничений (23), сериализация и взаимоблокировки (40), ошибки запроса (42)
+    private static boolean isRolledBack(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23")
+                || state.startsWith("40") || state.startsWith("42"));
+    }
+
+    // Остаток в памяти без обращения к БД; null, если товар журналом еще не загружен
+    public Long getTrackedAvailable(long productId) {
+        AtomicLong counter = available.get(productId);
+        return counter == null ? null : counter.get();
+    }
+
+    public long getAvailable(long productId) throws SQLException {
+        AtomicLong counter = counter(productId);
+        return counter == null ? 0 : counter.get();
+    }
+
+    // Применяет все накопленные дельты к products одним выражением; возвращает число обновленных товаров
+    public int flush() throws SQLException {
+        String sql = """
+            WITH applied AS (
+                DELETE FROM inventory_journal RETURNING product_id, delta
+            ),
+            totals AS (
+                SELECT product_id, sum(delta) as delta FROM applied GROUP BY product_id
+            )
+            UPDATE products p SET quantity = p.quantity + t.delta
+            FROM totals t
+            WHERE p.id = t.product_id AND t.delta <> 0
+            RETURNING p.id
+            """;
+
+        int updated = 0;
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                dbManager.invalidateProduct(rs.getLong(1));
+                updated++;
+            }
+        }
+        flushes.increment();
+        flushedProducts.add(updated);
+        if (updated > 0) {
+            dbManager.getMetrics().recordBatch("inventory_flush", updated);
+        }
+        return updated;
+    }
+
+    private void reserve(long productId, AtomicLong counter, int quantity) throws InsufficientStockException {
+        while (true) {
+            long current = counter.get();
+            if (current < quantity) {
+                rejections.increment();
+                throw new InsufficientStockException(productId, quantity, (int) current);
+            }
+            if (counter.compareAndSet(current, current - quantity)) {
+                reservations.increment();
+                return;
+            }
+        }
+    }
+
+    private void journal(long productId, long delta) throws SQLException {
+        if (delta == 0) {
+            return;
+        }
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO inventory_journal (product_id, delta) VALUES (?, ?)")) {
+            stmt.setLong(1, productId);
+            stmt.setLong(2, delta);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Счетчик загружается при первом обращении с учетом еще не выгруженных записей журнала
+    private AtomicLong counter(long productId) throws SQLException {
+        AtomicLong counter = available.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+
+        String sql = """
+            SELECT p.quantity + coalesce((SELECT sum(j.delta) FROM inventory_journal j WHERE j.product_id = p.id), 0)
+            FROM products p WHERE p.id = ?
+            """;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, productId);
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            AtomicLong loaded = new AtomicLong(rs.getLong(1));
+            AtomicLong existing = available.putIfAbsent(productId, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InventoryLedger[товаров: %d, резервов: %d, отказов: %d, выгрузок: %d, обновлено строк: %d]",
+                available.size(), reservations.sum(), rejections.sum(), flushes.sum(), flushedProducts.sum());
+    }
+}
@@ -0,0 +1,104 @@
+package project;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Сравнение placeOrder по одному «горячему» товару при N параллельных потоках:
+// списание остатка в строке products (блокировка строки) против резервирования в памяти (InventoryLedger).
+// Запуск: mvn exec:java -Dexec.args="ledger-bench 1 8 32"
+public class LedgerBenchmark {
+    private static final int ORDERS_PER_THREAD = 500;
+    private static final int WARMUP_ORDERS = 200;
+    private static final int STOCK = 100_000_000;
+
+    private final DatabaseManager dbManager;
+
+    public LedgerBenchmark(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    public void run(int[] threadCounts) throws Exception {
+        long productId = dbManager.createProduct(new Product("Бенчмарк: горячий товар",
+                "Товар для сравнения путей списания остатка", new BigDecimal("1.00"), STOCK, "Бенчмарк"));
+        long customerId = dbManager.createCustomer(new Customer("Бенчмарк", "Нагрузочный",
+                null, "ledger-bench-" + System.currentTimeMillis() + "@example.com"));
+
+        // Журнал включается до конца работы процесса, поэтому сначала все замеры прямого пути
+        Result[] direct = new Result[threadCounts.length];
+        measure(1, WARMUP_ORDERS, productId, customerId);
+        for (int i = 0; i < threadCounts.length; i++) {
+            dbManager.updateProductQuantity(productId, STOCK);
+            direct[i] = measure(threadCounts[i], ORDERS_PER_THREAD, productId, customerId);
+        }
+
+        dbManager.enableInventoryLedger();
+        Result[] ledger = new Result[threadCounts.length];
+        measure(1, WARMUP_ORDERS, productId, customerId);
+        for (int i = 0; i < threadCounts.length; i++) {
+            dbManager.updateProductQuantity(productId, STOCK);
+            ledger[i] = measure(threadCounts[i], ORDERS_PER_THREAD, productId, customerId);
+        }
+
+        System.out.println("\n СРАВНЕНИЕ placeOrder по одному товару: строка products и журнал остатков");
+        System.out.printf("%-8s | %-30s | %-30s%n", "Потоков", "products.quantity, зак/с", "InventoryLedger, зак/с");
+        for (int i = 0; i < threadCounts.length; i++) {
+            System.out.printf("%-8d | %-30s | %-30s%n", threadCounts[i], direct[i], ledger[i]);
+        }
+    }
+
+    private Result measure(int threads, int ordersPerThread, long productId, long customerId) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder errors = new LongAdder();
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ordersPerThread; i++) {
+                    try {
+                        dbManager.placeOrder(productId, customerId, 1);
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return new Result((long) threads * ordersPerThread, errors.sum(), elapsed);
+    }
+
+    private static final class Result {
+        private final long orders;
+        private final long errors;
+        private final long elapsedNanos;
+
+        private Result(long orders, long errors, long elapsedNanos) {
+            this.orders = orders;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            double throughput = (orders - errors) / (elapsedNanos / 1_000_000_000.0);
+            return errors == 0
+                    ? String.format("%.0f", throughput)
+                    : String.format("%.0f (ошибок: %d)", throughput, errors);
+        }
+    }
+}
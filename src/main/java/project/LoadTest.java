@@ -0,0 +1,271 @@
+package project;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+// Нагрузочный тест смешанной нагрузкой из N потоков.
+// closed - каждый поток выполняет следующую операцию сразу после предыдущей;
+// open - операции запускаются по расписанию с постоянной суммарной частотой rate в секунду.
+// В open задержка считается от запланированного времени старта, а не от фактического:
+// если система не успевает, ожидание в очереди попадает в перцентили (без coordinated omission).
+// Отдельно печатается время обслуживания - от фактического старта до завершения.
+public class LoadTest {
+    public enum Mode { CLOSED, OPEN }
+
+    @FunctionalInterface
+    private interface Action {
+        void run(SplittableRandom random) throws SQLException;
+    }
+
+    private final DatabaseManager dbManager;
+    private final Mode mode;
+    private final int threads;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final double rate;
+    private final Map<String, Integer> mix;
+
+    private long maxProductId;
+    private long maxCustomerId;
+    private Long newStatusId;
+
+    // mix - операция:вес через запятую, например "getProductById:40,createOrder:10"
+    public LoadTest(DatabaseManager dbManager, Mode mode, int threads, int durationSec, int warmupSec,
+                    double rate, String mix) {
+        if (mode == Mode.OPEN && rate <= 0) {
+            throw new IllegalArgumentException("Для open нужна частота больше нуля: " + rate);
+        }
+        this.dbManager = dbManager;
+        this.mode = mode;
+        this.threads = threads;
+        this.durationNanos = durationSec * 1_000_000_000L;
+        this.warmupNanos = warmupSec * 1_000_000_000L;
+        this.rate = rate;
+        this.mix = parseMix(mix);
+    }
+
+    public void run() throws SQLException {
+        maxProductId = maxId("products");
+        maxCustomerId = maxId("customers");
+        newStatusId = dbManager.getStatusDictionary().idOf("Новый");
+        if (maxProductId == 0 || maxCustomerId == 0) {
+            throw new SQLException("Нет товаров или клиентов для нагрузки");
+        }
+
+        List<String> names = new ArrayList<>(mix.keySet());
+        List<Action> actions = new ArrayList<>();
+        int[] cumulative = new int[names.size()];
+        int total = 0;
+        for (int i = 0; i < names.size(); i++) {
+            actions.add(action(names.get(i)));
+            total += mix.get(names.get(i));
+            cumulative[i] = total;
+        }
+
+        System.out.printf("%nНАГРУЗКА: %s, потоков %d, прогрев %d с, замер %d с%s%n", mode.name().toLowerCase(), threads,
+                warmupNanos / 1_000_000_000L, durationNanos / 1_000_000_000L,
+                mode == Mode.OPEN ? String.format(", частота %.0f оп/с", rate) : "");
+        System.out.println("Смесь: " + mix);
+        if (threads > dbManager.getPoolMaxSize()) {
+            System.out.println("Потоков больше, чем подключений в пуле (" + dbManager.getPoolMaxSize() +
+                    "): ожидание подключения входит в задержку");
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        int sum = total;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Worker>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Worker worker = new Worker(names.size(), new SplittableRandom(t * 0x9E3779B97F4A7C15L + start));
+            // Потоки сдвинуты по фазе, чтобы в open запуски шли равномерно, а не пачками
+            long interval = mode == Mode.OPEN ? (long) (threads * 1_000_000_000.0 / rate) : 0;
+            long firstStart = start + interval * t / threads;
+            futures.add(executor.submit(() -> worker.run(actions, cumulative, sum, firstStart, interval, measureFrom, end)));
+        }
+
+        Worker merged = new Worker(names.size(), null);
+        try {
+            for (Future<Worker> future : futures) {
+                merged.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Нагрузочный тест прерван", e);
+        } catch (Exception e) {
+            throw new SQLException("Ошибка нагрузочного теста: " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+        report(names, merged);
+    }
+
+    private Action action(String name) {
+        return switch (name) {
+            case "getProductById" -> random -> dbManager.getProductById(1 + random.nextLong(maxProductId));
+            case "getCustomerById" -> random -> dbManager.getCustomerById(1 + random.nextLong(maxCustomerId));
+            case "recentOrders" -> random -> dbManager.getRecentOrdersPage(null, 20);
+            case "createOrder" -> random -> {
+                int quantity = 1 + random.nextInt(5);
+                dbManager.createOrder(new Order(1 + random.nextLong(maxProductId), 1 + random.nextLong(maxCustomerId),
+                        newStatusId, quantity, BigDecimal.valueOf(quantity * 100L)));
+            };
+            case "updateProductQuantity" -> random ->
+                    dbManager.updateProductQuantity(1 + random.nextLong(maxProductId), random.nextInt(1000));
+            default -> throw new IllegalArgumentException("Неизвестная операция нагрузки: " + name);
+        };
+    }
+
+    private void report(List<String> names, Worker result) {
+        double seconds = durationNanos / 1_000_000_000.0;
+        System.out.printf("%n%-22s | %9s | %7s | %9s | %9s | %9s | %9s | %9s%n",
+                "Операция", "оп/с", "ошибок", "p50, мс", "p99, мс", "p999, мс", "max, мс", "среднее");
+        LatencyHistogram all = new LatencyHistogram();
+        long errors = 0;
+        for (int i = 0; i < names.size(); i++) {
+            printRow(names.get(i), result.latency[i], result.errors[i], seconds);
+            all.add(result.latency[i]);
+            errors += result.errors[i];
+        }
+        printRow("ВСЕГО", all, errors, seconds);
+
+        if (mode == Mode.OPEN) {
+            LatencyHistogram service = new LatencyHistogram();
+            for (LatencyHistogram histogram : result.service) {
+                service.add(histogram);
+            }
+            System.out.println("\nВремя обслуживания (без ожидания по расписанию):");
+            printRow("ВСЕГО", service, errors, seconds);
+            double achieved = all.getCount() / seconds;
+            if (achieved < rate * 0.95) {
+                System.out.printf("Заданная частота не достигнута: %.0f из %.0f оп/с%n", achieved, rate);
+            }
+        }
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram, long errors, double seconds) {
+        System.out.printf("%-22s | %9.1f | %7d | %9.3f | %9.3f | %9.3f | %9.3f | %9.3f%n",
+                name, histogram.getCount() / seconds, errors,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxNanos()),
+                histogram.getMeanNanos() / 1_000_000.0);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Ожидается операция:вес, получено: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(parts[0].trim(), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Пустая смесь операций: " + mix);
+        }
+        return weights;
+    }
+
+    private long maxId(String table) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT coalesce(max(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Гистограммы одного потока; после завершения складываются в общий результат
+    private final class Worker {
+        private final LatencyHistogram[] latency;
+        private final LatencyHistogram[] service;
+        private final long[] errors;
+        private final SplittableRandom random;
+
+        private Worker(int operations, SplittableRandom random) {
+            this.latency = new LatencyHistogram[operations];
+            this.service = new LatencyHistogram[operations];
+            this.errors = new long[operations];
+            this.random = random;
+            for (int i = 0; i < operations; i++) {
+                latency[i] = new LatencyHistogram();
+                service[i] = new LatencyHistogram();
+            }
+        }
+
+        // interval = 0 - закрытый цикл, иначе плановое время следующего старта сдвигается на interval
+        private Worker run(List<Action> actions, int[] cumulative, int total, long firstStart, long interval,
+                           long measureFrom, long end) {
+            long intended = firstStart;
+            while (!Thread.currentThread().isInterrupted()) {
+                if (interval > 0) {
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+                }
+                long started = System.nanoTime();
+                // В open запланированные до конца замера операции выполняются, даже если поток отстал
+                if ((interval > 0 ? intended : started) >= end) {
+                    break;
+                }
+                int op = pick(cumulative, random.nextInt(total));
+                boolean failed = false;
+                try {
+                    actions.get(op).run(random);
+                } catch (SQLException | RuntimeException e) {
+                    failed = true;
+                }
+                long finished = System.nanoTime();
+                long scheduled = interval > 0 ? intended : started;
+                if (scheduled >= measureFrom && scheduled < end) {
+                    latency[op].record(finished - scheduled);
+                    service[op].record(finished - started);
+                    if (failed) {
+                        errors[op]++;
+                    }
+                }
+                intended += interval;
+            }
+            return this;
+        }
+
+        private void add(Worker other) {
+            for (int i = 0; i < latency.length; i++) {
+                latency[i].add(other.latency[i]);
+                service[i].add(other.service[i]);
+                errors[i] += other.errors[i];
+            }
+        }
+
+        private int pick(int[] cumulative, int value) {
+            int i = 0;
+            while (value >= cumulative[i]) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
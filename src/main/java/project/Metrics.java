@@ -0,0 +1,357 @@
+package project;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Метрики DatabaseManager: время, вызовы, ошибки и прочитанные строки по каждой DAO-операции,
+// время получения подключения из пула, строки на запрос, размеры пакетов.
+// Публикуются через JMX (project:type=...) и текстом в формате Prometheus (toPrometheus).
+public class Metrics {
+    private static final String JMX_DOMAIN = "project";
+    // Границы корзин гистограмм Prometheus: время в секундах и размеры (строки, пакеты)
+    private static final double[] LATENCY_BUCKETS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] SIZE_BUCKETS = {0, 1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 100000};
+
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    public interface OperationMXBean {
+        long getCalls();
+        long getErrors();
+        long getRowsFetched();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getP999Millis();
+        double getMaxMillis();
+    }
+
+    public interface ConnectionPoolMXBean {
+        int getTotal();
+        int getActive();
+        int getIdle();
+        int getWaiting();
+        long getBorrowed();
+        long getTimeouts();
+        double getStatementCacheHitRate();
+        double getAcquireP50Millis();
+        double getAcquireP99Millis();
+        double getAcquireMaxMillis();
+    }
+
+    // Гистограмма задержек под блокировкой: запись занимает наносекунды,
+    // на фоне обращения к БД конкуренция за нее незаметна
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        public synchronized void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        public synchronized LatencyHistogram snapshot() {
+            LatencyHistogram copy = new LatencyHistogram();
+            copy.add(histogram);
+            return copy;
+        }
+    }
+
+    // Распределение неотрицательных размеров по фиксированным корзинам SIZE_BUCKETS
+    public static final class Distribution {
+        private final LongAdder[] counts = new LongAdder[SIZE_BUCKETS.length + 1];
+        private final LongAdder sum = new LongAdder();
+
+        private Distribution() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        public void record(long value) {
+            int bucket = 0;
+            while (bucket < SIZE_BUCKETS.length && value > SIZE_BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder adder : counts) {
+                count += adder.sum();
+            }
+            return count;
+        }
+
+        public long getSum() { return sum.sum(); }
+    }
+
+    public static final class Operation implements OperationMXBean {
+        private final Timer timer = new Timer();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        @Override public long getCalls() { return calls.sum(); }
+        @Override public long getErrors() { return errors.sum(); }
+        @Override public long getRowsFetched() { return rows.sum(); }
+        @Override public double getMeanMillis() { return timer.snapshot().getMeanNanos() / 1_000_000.0; }
+        @Override public double getP50Millis() { return percentileMillis(timer, 50); }
+        @Override public double getP99Millis() { return percentileMillis(timer, 99); }
+        @Override public double getP999Millis() { return percentileMillis(timer, 99.9); }
+        @Override public double getMaxMillis() { return timer.snapshot().getMaxNanos() / 1_000_000.0; }
+    }
+
+    private final boolean jmxEnabled;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, Distribution> batchSizes = new ConcurrentHashMap<>();
+    private final Distribution rowsPerQuery = new Distribution();
+    private final Timer connectionAcquire = new Timer();
+    // Текущая операция потока: к ней относятся строки, прочитанные ее запросами
+    private final ThreadLocal<Operation> current = new ThreadLocal<>();
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile Supplier<ConnectionPool.Stats> poolStats;
+    private final List<Supplier<EntityCache.Stats>> caches = new ArrayList<>();
+
+    public Metrics(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    // Выполняет DAO-операцию с замером времени; исключение учитывается как ошибка и пробрасывается
+    public <T> T time(String operation, SqlCall<T> call) throws SQLException {
+        Operation op = operation(operation);
+        Operation outer = current.get();
+        current.set(op);
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (SQLException | RuntimeException e) {
+            op.errors.increment();
+            throw e;
+        } finally {
+            op.timer.record(System.nanoTime() - start);
+            op.calls.increment();
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+
+    public void recordConnectionAcquire(long nanos) {
+        connectionAcquire.record(nanos);
+    }
+
+    // Строки, прочитанные одним запросом; вызывает цикл чтения внутри time()
+    public void recordRowsFetched(long rows) {
+        rowsPerQuery.record(rows);
+        Operation op = current.get();
+        if (op != null) {
+            op.rows.add(rows);
+        }
+    }
+
+    // То же для чтения, которое заканчивается вне time() (потоковое чтение до закрытия Stream)
+    public void recordRowsFetched(String operation, long rows) {
+        rowsPerQuery.record(rows);
+        operation(operation).rows.add(rows);
+    }
+
+    public void recordBatch(String name, int size) {
+        batchSizes.computeIfAbsent(name, key -> new Distribution()).record(size);
+    }
+
+    public Operation getOperation(String name) {
+        return operations.get(name);
+    }
+
+    public void registerPool(Supplier<ConnectionPool.Stats> stats) {
+        this.poolStats = stats;
+        register("type=ConnectionPool", new ConnectionPoolMXBean() {
+            @Override public int getTotal() { return stats.get().getTotal(); }
+            @Override public int getActive() { return stats.get().getActive(); }
+            @Override public int getIdle() { return stats.get().getIdle(); }
+            @Override public int getWaiting() { return stats.get().getWaiting(); }
+            @Override public long getBorrowed() { return stats.get().getBorrowed(); }
+            @Override public long getTimeouts() { return stats.get().getTimeouts(); }
+            @Override public double getStatementCacheHitRate() { return stats.get().getStatementCacheHitRate(); }
+            @Override public double getAcquireP50Millis() { return percentileMillis(connectionAcquire, 50); }
+            @Override public double getAcquireP99Millis() { return percentileMillis(connectionAcquire, 99); }
+            @Override public double getAcquireMaxMillis() { return connectionAcquire.snapshot().getMaxNanos() / 1_000_000.0; }
+        });
+    }
+
+    public synchronized void registerCache(Supplier<EntityCache.Stats> stats) {
+        caches.add(stats);
+    }
+
+    private Operation operation(String name) {
+        Operation op = operations.get(name);
+        if (op == null) {
+            op = operations.computeIfAbsent(name, key -> {
+                Operation created = new Operation();
+                register("type=Operation,name=" + key, created);
+                return created;
+            });
+        }
+        return op;
+    }
+
+    private void register(String properties, Object mbean) {
+        if (!jmxEnabled) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+                synchronized (registered) {
+                    registered.add(name);
+                }
+            }
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать MBean " + properties + ": " + e.getMessage());
+        }
+    }
+
+    public void unregisterAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registered) {
+            for (ObjectName name : registered) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (JMException ignored) {
+                    // Уже снят
+                }
+            }
+            registered.clear();
+        }
+    }
+
+    // Текстовый формат Prometheus (text/plain; version=0.0.4)
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(8192);
+        Map<String, Operation> sorted = new TreeMap<>(operations);
+
+        header(out, "db_operation_duration_seconds", "histogram", "Время выполнения DAO-операций");
+        for (Map.Entry<String, Operation> entry : sorted.entrySet()) {
+            histogram(out, "db_operation_duration_seconds", "operation=\"" + entry.getKey() + "\"",
+                    entry.getValue().timer.snapshot());
+        }
+        header(out, "db_operation_errors_total", "counter", "Число DAO-операций, завершившихся исключением");
+        for (Map.Entry<String, Operation> entry : sorted.entrySet()) {
+            sample(out, "db_operation_errors_total", "operation=\"" + entry.getKey() + "\"", entry.getValue().getErrors());
+        }
+        header(out, "db_operation_rows_fetched_total", "counter", "Строки, прочитанные запросами DAO-операций");
+        for (Map.Entry<String, Operation> entry : sorted.entrySet()) {
+            sample(out, "db_operation_rows_fetched_total", "operation=\"" + entry.getKey() + "\"", entry.getValue().getRowsFetched());
+        }
+
+        header(out, "db_query_rows", "histogram", "Строк, прочитанных одним запросом");
+        distribution(out, "db_query_rows", "", rowsPerQuery);
+        header(out, "db_batch_size", "histogram", "Размер пакетных операций");
+        for (Map.Entry<String, Distribution> entry : new TreeMap<>(batchSizes).entrySet()) {
+            distribution(out, "db_batch_size", "batch=\"" + entry.getKey() + "\"", entry.getValue());
+        }
+
+        header(out, "db_pool_acquire_seconds", "histogram", "Время получения подключения из пула");
+        histogram(out, "db_pool_acquire_seconds", "", connectionAcquire.snapshot());
+        Supplier<ConnectionPool.Stats> pool = poolStats;
+        if (pool != null) {
+            ConnectionPool.Stats stats = pool.get();
+            header(out, "db_pool_connections", "gauge", "Подключения пула по состоянию");
+            sample(out, "db_pool_connections", "state=\"active\"", stats.getActive());
+            sample(out, "db_pool_connections", "state=\"idle\"", stats.getIdle());
+            header(out, "db_pool_waiting_threads", "gauge", "Потоки, ожидающие подключения");
+            sample(out, "db_pool_waiting_threads", "", stats.getWaiting());
+            header(out, "db_pool_timeouts_total", "counter", "Таймауты получения подключения");
+            sample(out, "db_pool_timeouts_total", "", stats.getTimeouts());
+            header(out, "db_statement_cache_requests_total", "counter", "Обращения к кэшу подготовленных выражений");
+            sample(out, "db_statement_cache_requests_total", "result=\"hit\"", stats.getStatementCacheHits());
+            sample(out, "db_statement_cache_requests_total", "result=\"miss\"", stats.getStatementCacheMisses());
+        }
+
+        List<Supplier<EntityCache.Stats>> cacheList;
+        synchronized (this) {
+            cacheList = new ArrayList<>(caches);
+        }
+        if (!cacheList.isEmpty()) {
+            header(out, "db_entity_cache_requests_total", "counter", "Обращения к кэшу сущностей");
+            for (Supplier<EntityCache.Stats> cache : cacheList) {
+                EntityCache.Stats stats = cache.get();
+                String label = "cache=\"" + stats.getName() + "\"";
+                sample(out, "db_entity_cache_requests_total", label + ",result=\"hit\"", stats.getHits() + stats.getNegativeHits());
+                sample(out, "db_entity_cache_requests_total", label + ",result=\"miss\"", stats.getMisses());
+            }
+            header(out, "db_entity_cache_size", "gauge", "Записей в кэше сущностей");
+            for (Supplier<EntityCache.Stats> cache : cacheList) {
+                EntityCache.Stats stats = cache.get();
+                sample(out, "db_entity_cache_size", "cache=\"" + stats.getName() + "\"", stats.getSize());
+            }
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (double bound : LATENCY_BUCKETS) {
+            sample(out, name + "_bucket", prefix + "le=\"" + format(bound) + "\"",
+                    histogram.getCountAtOrBelow((long) (bound * 1_000_000_000L)));
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", histogram.getCount());
+        sample(out, name + "_sum", labels, histogram.getTotalNanos() / 1_000_000_000.0);
+        sample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private static void distribution(StringBuilder out, String name, String labels, Distribution distribution) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            cumulative += distribution.counts[i].sum();
+            sample(out, name + "_bucket", prefix + "le=\"" + SIZE_BUCKETS[i] + "\"", cumulative);
+        }
+        cumulative += distribution.counts[SIZE_BUCKETS.length].sum();
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+        sample(out, name + "_sum", labels, distribution.getSum());
+        sample(out, name + "_count", labels, cumulative);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static double percentileMillis(Timer timer, double percentile) {
+        return timer.snapshot().getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+}
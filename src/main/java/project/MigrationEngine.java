@@ -0,0 +1,237 @@
+package project;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+// Версионные миграции схемы. Примененные шаги записываются в schema_version вместе с контрольной
+// суммой (SHA-256 текста шага); измененный после применения шаг считается ошибкой.
+// Актуальная схема определяется одним запросом к schema_version. Если есть что применять,
+// узлы сериализуются advisory-блокировкой, каждый шаг выполняется в своей транзакции.
+// Блокировка берется опросом pg_try_advisory_lock, а не ожиданием в pg_advisory_lock: ожидающий узел
+// не держит открытую транзакцию со снимком, которого ждал бы CREATE INDEX CONCURRENTLY
+// (и любой другой шаг вне транзакции) у держателя блокировки - иначе узлы ждут друг друга.
+public class MigrationEngine {
+    // Ключ pg_advisory_lock для миграций этого приложения
+    private static final long LOCK_KEY = 0x6f72646572735f31L;
+    private static final long LOCK_POLL_MS = 500;
+    private static final String UNDEFINED_TABLE = "42P01";
+
+    @FunctionalInterface
+    public interface MigrationAction {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    // Шаг миграции: либо набор SQL-выражений, либо код с текстом-описанием для контрольной суммы
+    public static final class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationAction action;
+        private final String checksum;
+        private final boolean transactional;
+
+        private Migration(int version, String description, MigrationAction action, String definition,
+                          boolean transactional) {
+            this.version = version;
+            this.description = description;
+            this.action = action;
+            this.checksum = sha256(definition);
+            this.transactional = transactional;
+        }
+
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+        public String getChecksum() { return checksum; }
+        public boolean isTransactional() { return transactional; }
+    }
+
+    public static Migration sql(int version, String description, String... statements) {
+        return new Migration(version, description, conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : statements) {
+                    stmt.execute(sql);
+                }
+            }
+        }, String.join("\n;\n", statements), true);
+    }
+
+    // definition должен меняться вместе с кодом шага (обычно это его SQL)
+    public static Migration code(int version, String description, String definition, MigrationAction action) {
+        return new Migration(version, description, action, definition, true);
+    }
+
+    // Шаг вне транзакции (CREATE INDEX CONCURRENTLY и т.п.). Должен быть повторяемым:
+    // при сбое версия не записывается, и шаг выполнится заново при следующем запуске.
+    public static Migration nonTransactional(int version, String description, String definition, MigrationAction action) {
+        return new Migration(version, description, action, definition, false);
+    }
+
+    private final DatabaseManager dbManager;
+
+    public MigrationEngine(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    // Применяет недостающие шаги; возвращает число примененных
+    public int migrate(List<Migration> migrations) throws SQLException {
+        List<Migration> ordered = new ArrayList<>(migrations);
+        ordered.sort(Comparator.comparingInt(Migration::getVersion));
+
+        // Быстрый путь: один запрос, без блокировок
+        Map<Integer, String> applied;
+        try (Connection conn = dbManager.getConnection()) {
+            applied = readApplied(conn);
+        }
+        if (applied != null && pending(ordered, applied).isEmpty()) {
+            System.out.println("Схема БД актуальна (версия " + latest(applied) + ")");
+            return 0;
+        }
+
+        try (Connection conn = dbManager.getConnection()) {
+            lock(conn);
+            try {
+                createVersionTable(conn);
+                // Пока ждали блокировку, миграции мог применить другой узел: версия перечитывается
+                // под блокировкой, и уже построенные им индексы повторно не трогаются
+                applied = readApplied(conn);
+                List<Migration> pending = pending(ordered, applied);
+                if (pending.isEmpty()) {
+                    System.out.println("Схема БД актуальна (версия " + latest(applied) + ", применена другим узлом)");
+                    return 0;
+                }
+                for (Migration migration : pending) {
+                    apply(conn, migration);
+                }
+                return pending.size();
+            } finally {
+                conn.setAutoCommit(true);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+            }
+        }
+    }
+
+    // Каждая попытка - отдельное короткое выражение в autocommit, между попытками транзакции нет
+    private void lock(Connection conn) throws SQLException {
+        conn.setAutoCommit(true);
+        boolean waiting = false;
+        while (true) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+                if (rs.next() && rs.getBoolean(1)) {
+                    return;
+                }
+            }
+            if (!waiting) {
+                System.out.println("Миграции выполняет другой узел, ожидание...");
+                waiting = true;
+            }
+            try {
+                Thread.sleep(LOCK_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Ожидание блокировки миграций прервано", e);
+            }
+        }
+    }
+
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        conn.setAutoCommit(!migration.transactional);
+        try {
+            migration.action.apply(conn);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+                stmt.setInt(1, migration.version);
+                stmt.setString(2, migration.description);
+                stmt.setString(3, migration.checksum);
+                stmt.setLong(4, System.currentTimeMillis() - start);
+                stmt.executeUpdate();
+            }
+            if (migration.transactional) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            if (migration.transactional) {
+                conn.rollback();
+            }
+            throw new SQLException("Миграция " + migration.version + " (" + migration.description + ") не применена: " +
+                    e.getMessage(), e.getSQLState(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        System.out.printf(" Миграция %d: %s - применена за %d мс%n",
+                migration.version, migration.description, System.currentTimeMillis() - start);
+    }
+
+    // Шаги, которых нет в schema_version; расхождение контрольной суммы - ошибка
+    private List<Migration> pending(List<Migration> migrations, Map<Integer, String> applied) throws SQLException {
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            String checksum = applied.get(migration.version);
+            if (checksum == null) {
+                pending.add(migration);
+            } else if (!checksum.equals(migration.checksum)) {
+                throw new SQLException("Миграция " + migration.version + " (" + migration.description +
+                        ") изменена после применения: контрольная сумма не совпадает");
+            }
+        }
+        return pending;
+    }
+
+    // null, если таблицы schema_version еще нет
+    private Map<Integer, String> readApplied(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2));
+            }
+        } catch (SQLException e) {
+            if (UNDEFINED_TABLE.equals(e.getSQLState())) {
+                return null;
+            }
+            throw e;
+        }
+        return applied;
+    }
+
+    private void createVersionTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description VARCHAR(200) NOT NULL,
+                    checksum CHAR(64) NOT NULL,
+                    applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    execution_ms BIGINT NOT NULL
+                )
+                """);
+        }
+    }
+
+    private static int latest(Map<Integer, String> applied) {
+        return applied.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
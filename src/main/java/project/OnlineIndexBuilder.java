@@ -0,0 +1,262 @@
+package project;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Построение индексов без блокировки записи: CREATE INDEX CONCURRENTLY вне транзакции.
+// Недостроенный (INVALID) индекс, оставшийся после сбоя, удаляется и строится заново.
+// Для секционированной таблицы индекс создается ON ONLY на родителе, затем CONCURRENTLY
+// в каждой секции и подключается ATTACH PARTITION - родительский индекс становится валидным,
+// когда подключены все секции.
+// Ход построения печатается по pg_stat_progress_create_index с отдельного подключения.
+public class OnlineIndexBuilder {
+    // Описание индекса; его SQL входит в контрольную сумму шага миграции
+    public static final class Index {
+        private final String name;
+        private final String table;
+        private final String columns;
+
+        public Index(String name, String table, String columns) {
+            this.name = name;
+            this.table = table;
+            this.columns = columns;
+        }
+
+        public String getName() { return name; }
+        public String getTable() { return table; }
+        public String getColumns() { return columns; }
+
+        @Override
+        public String toString() {
+            return "CREATE INDEX " + name + " ON " + table + "(" + columns + ")";
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final long progressIntervalMs;
+
+    public OnlineIndexBuilder(DatabaseManager dbManager, long progressIntervalMs) {
+        this.dbManager = dbManager;
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    // Шаг миграции, строящий индексы онлайн; повторный запуск достраивает то, что не успели
+    public MigrationEngine.Migration migration(int version, String description, Index... indexes) {
+        StringBuilder definition = new StringBuilder("CONCURRENTLY");
+        for (Index index : indexes) {
+            definition.append('\n').append(index);
+        }
+        return MigrationEngine.nonTransactional(version, description, definition.toString(), conn -> {
+            for (Index index : indexes) {
+                create(conn, index);
+            }
+        });
+    }
+
+    // conn должен быть в режиме autocommit; возвращает false, если валидный индекс уже есть
+    public boolean create(Connection conn, Index index) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            throw new SQLException("CREATE INDEX CONCURRENTLY нельзя выполнять внутри транзакции");
+        }
+        Boolean valid = isValid(conn, index.name);
+        if (Boolean.TRUE.equals(valid)) {
+            System.out.println(" Индекс " + index.name + " - уже существует");
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        if (isPartitioned(conn, index.table)) {
+            createPartitioned(conn, index, valid != null);
+        } else {
+            if (valid != null) {
+                dropInvalid(conn, index.name);
+            }
+            build(conn, index.name, "CREATE INDEX CONCURRENTLY " + index.name + " ON " + index.table + " (" + index.columns + ")");
+        }
+        System.out.printf(" Индекс %s построен онлайн за %d мс%n", index.name, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    private void createPartitioned(Connection conn, Index index, boolean parentExists) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (!parentExists) {
+                // Создается сразу и невалидным, данные секций не читаются
+                stmt.execute("CREATE INDEX " + index.name + " ON ONLY " + index.table + " (" + index.columns + ")");
+            }
+        }
+        for (String partition : partitions(conn, index.table)) {
+            String child = index.name + "_" + partition;
+            if (isAttached(conn, child, index.name)) {
+                continue;
+            }
+            Boolean childValid = isValid(conn, child);
+            if (Boolean.FALSE.equals(childValid)) {
+                dropInvalid(conn, child);
+            }
+            if (!Boolean.TRUE.equals(childValid)) {
+                build(conn, child, "CREATE INDEX CONCURRENTLY " + child + " ON " + partition + " (" + index.columns + ")");
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER INDEX " + index.name + " ATTACH PARTITION " + child);
+            }
+        }
+    }
+
+    private void build(Connection conn, String name, String sql) throws SQLException {
+        int pid;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pg_backend_pid()")) {
+            rs.next();
+            pid = rs.getInt(1);
+        }
+        ProgressReporter reporter = new ProgressReporter(name, pid);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        } finally {
+            reporter.close();
+        }
+    }
+
+    // Находит все невалидные индексы схемы и перестраивает их без блокировки записи.
+    // Остатки прерванного REINDEX CONCURRENTLY (*_ccnew, *_ccold) просто удаляются.
+    public int repairInvalidIndexes() throws SQLException {
+        String sql = """
+            SELECT c.relname
+            FROM pg_index i
+            JOIN pg_class c ON c.oid = i.indexrelid
+            JOIN pg_namespace n ON n.oid = c.relnamespace
+            WHERE NOT i.indisvalid AND n.nspname = 'public' AND c.relkind = 'i'
+            ORDER BY c.relname
+            """;
+        int repaired = 0;
+        try (Connection conn = dbManager.getConnection()) {
+            List<String> invalid = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    invalid.add(rs.getString(1));
+                }
+            }
+            for (String name : invalid) {
+                if (name.matches(".*_cc(new|old)\\d*")) {
+                    dropInvalid(conn, name);
+                    System.out.println(" Удален остаток прерванной перестройки: " + name);
+                } else {
+                    build(conn, name, "REINDEX INDEX CONCURRENTLY " + name);
+                    System.out.println(" Индекс " + name + " перестроен");
+                }
+                repaired++;
+            }
+        }
+        if (repaired == 0) {
+            System.out.println("Невалидных индексов нет");
+        }
+        return repaired;
+    }
+
+    // null - индекса нет
+    private static Boolean isValid(Connection conn, String indexName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT i.indisvalid FROM pg_index i
+                WHERE i.indexrelid = to_regclass('public.' || ?)
+                """)) {
+            stmt.setString(1, indexName);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getBoolean(1) : null;
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('public.' || ?)")) {
+            stmt.setString(1, table);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private static boolean isAttached(Connection conn, String child, String parent) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT 1 FROM pg_inherits
+                WHERE inhrelid = to_regclass('public.' || ?) AND inhparent = to_regclass('public.' || ?)
+                """)) {
+            stmt.setString(1, child);
+            stmt.setString(2, parent);
+            return stmt.executeQuery().next();
+        }
+    }
+
+    private static List<String> partitions(Connection conn, String table) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = to_regclass('public.' || ?) ORDER BY 1")) {
+            stmt.setString(1, table);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        return partitions;
+    }
+
+    private static void dropInvalid(Connection conn, String indexName) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+        }
+    }
+
+    // Периодически печатает фазу и прогресс построения индекса сеансом pid
+    private final class ProgressReporter {
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private ProgressReporter(String indexName, int pid) {
+            this.thread = new Thread(() -> poll(indexName, pid), "index-progress-" + indexName);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private void poll(String indexName, int pid) {
+            String sql = """
+                SELECT phase, blocks_done, blocks_total, tuples_done, tuples_total
+                FROM pg_stat_progress_create_index
+                WHERE pid = ?
+                """;
+            try (Connection conn = dbManager.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, pid);
+                while (running) {
+                    Thread.sleep(progressIntervalMs);
+                    if (!running) {
+                        break;
+                    }
+                    ResultSet rs = stmt.executeQuery();
+                    if (rs.next()) {
+                        System.out.printf("   %s: %s, блоков %s, строк %s%n", indexName, rs.getString(1),
+                                progress(rs.getLong(2), rs.getLong(3)), progress(rs.getLong(4), rs.getLong(5)));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                System.err.println("Не удалось получить прогресс построения " + indexName + ": " + e.getMessage());
+            }
+        }
+
+        private String progress(long done, long total) {
+            return total > 0
+                    ? String.format("%d/%d (%.1f%%)", done, total, 100.0 * done / total)
+                    : String.valueOf(done);
+        }
+
+        private void close() {
+            running = false;
+            thread.interrupt();
+        }
+    }
+}
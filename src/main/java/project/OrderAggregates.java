@@ -0,0 +1,163 @@
+package project;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Сводные таблицы, которые поддерживаются в той же транзакции, что и изменение заказов.
+// Каждый путь записи заказов оформлен одним выражением:
+//     WITH changed AS (INSERT/DELETE ... RETURNING <CHANGED_COLUMNS>) <maintain(...)> SELECT ... FROM changed
+// поэтому сводки меняются атомарно вместе с заказами и без лишних обращений к БД.
+final class OrderAggregates {
+    // Колонки, которые должна вернуть CTE с измененными заказами
+    static final String CHANGED_COLUMNS = "id, product_id, quantity, total_amount, order_date";
+
+    // Таблицы-свертки выручки по интервалам времени
+    static final String HOURLY = "orders_hourly";
+    static final String DAILY = "orders_daily";
+    // Строк на один интервал: каждый сеанс пишет в свой слот (pg_backend_pid() % BUCKET_SLOTS),
+    // поэтому одновременные заказы текущего часа не ждут блокировку одной строки.
+    // При чтении слоты складываются (sum/min/max по всем строкам интервала).
+    static final int BUCKET_SLOTS = 8;
+
+    private OrderAggregates() {
+    }
+
+    // CTE, применяющие изменения заказов из changedCte к сводкам; inserted = false - заказы удалены
+    static String maintain(String changedCte, boolean inserted) {
+        String sign = inserted ? "" : "-";
+        String productSales = """
+            , product_sales_delta AS (
+                INSERT INTO product_sales AS s (product_id, units_sold, revenue)
+                SELECT product_id, %1$ssum(quantity), %1$ssum(total_amount)
+                FROM %2$s
+                GROUP BY product_id
+                -- Одинаковый порядок блокировки строк во всех пакетах: пересекающиеся пакеты не взаимоблокируются
+                ORDER BY product_id
+                ON CONFLICT (product_id) DO UPDATE
+                SET units_sold = s.units_sold + EXCLUDED.units_sold,
+                    revenue = s.revenue + EXCLUDED.revenue
+            )
+            """.formatted(sign, changedCte);
+        return productSales
+                + (inserted ? addToBuckets(changedCte, HOURLY, "hour") : removeFromBuckets(changedCte, HOURLY, "hour"))
+                + (inserted ? addToBuckets(changedCte, DAILY, "day") : removeFromBuckets(changedCte, DAILY, "day"));
+    }
+
+    private static String addToBuckets(String changedCte, String table, String unit) {
+        return """
+            , %1$s_delta AS (
+                INSERT INTO %1$s AS b (bucket_start, slot, order_count, revenue, first_order, last_order)
+                SELECT date_trunc('%2$s', order_date), (pg_backend_pid() %% %4$d)::smallint,
+                       count(*), sum(total_amount), min(order_date), max(order_date)
+                FROM %3$s
+                WHERE order_date IS NOT NULL
+                GROUP BY 1
+                ORDER BY 1
+                ON CONFLICT (bucket_start, slot) DO UPDATE
+                SET order_count = b.order_count + EXCLUDED.order_count,
+                    revenue = b.revenue + EXCLUDED.revenue,
+                    first_order = least(b.first_order, EXCLUDED.first_order),
+                    last_order = greatest(b.last_order, EXCLUDED.last_order)
+            )
+            """.formatted(table, unit, changedCte, BUCKET_SLOTS);
+    }
+
+    // Удаление пересчитывает затронутые интервалы по orders (idx_orders_date) в одну строку слота 0,
+    // остальные слоты интервала удаляются: слот, через который заказ попал в свертку, не хранится,
+    // а вычитание из произвольного слота сделало бы счетчики слотов бессмысленными (и отрицательными).
+    // Все CTE видят снимок до удаления, поэтому удаленные заказы исключаются явно.
+    // Строки интервалов заранее блокирует lockBuckets, иначе пересчет затер бы параллельные добавления.
+    private static String removeFromBuckets(String changedCte, String table, String unit) {
+        return """
+            , %1$s_touched AS (
+                SELECT DISTINCT date_trunc('%2$s', order_date) as bucket_start
+                FROM %3$s
+                WHERE order_date IS NOT NULL
+            ),
+            %1$s_merged AS (
+                DELETE FROM %1$s b USING %1$s_touched t
+                WHERE b.bucket_start = t.bucket_start AND b.slot <> 0
+            ),
+            %1$s_delta AS (
+                INSERT INTO %1$s AS b (bucket_start, slot, order_count, revenue, first_order, last_order)
+                SELECT t.bucket_start, 0, count(o.id), coalesce(sum(o.total_amount), 0), min(o.order_date), max(o.order_date)
+                FROM %1$s_touched t
+                LEFT JOIN orders o ON o.order_date >= t.bucket_start AND o.order_date < t.bucket_start + interval '1 %2$s'
+                                  AND o.id NOT IN (SELECT id FROM %3$s)
+                GROUP BY t.bucket_start
+                ORDER BY 1
+                ON CONFLICT (bucket_start, slot) DO UPDATE
+                SET order_count = EXCLUDED.order_count,
+                    revenue = EXCLUDED.revenue,
+                    first_order = EXCLUDED.first_order,
+                    last_order = EXCLUDED.last_order
+            )
+            """.formatted(table, unit, changedCte);
+    }
+
+    // Выражения, которые транзакция удаления выполняет до maintain(..., false): создают слот 0
+    // интервалов удаляемых заказов и блокируют все слоты этих интервалов (сначала часовые, затем
+    // дневные - в том же порядке, что и добавление). Пересчет идет отдельным выражением со свежим
+    // снимком: заказы, записанные до блокировки, в него попадут, а добавления после нее ждут коммита
+    // и прибавятся к пересчитанной строке. targetQuery выбирает order_date удаляемых заказов.
+    static List<String> lockBuckets(String targetQuery) {
+        List<String> statements = new ArrayList<>();
+        statements.add("""
+            WITH target AS (%1$s),
+            %2$s_slot0 AS (
+                INSERT INTO %2$s (bucket_start, slot)
+                SELECT DISTINCT date_trunc('hour', order_date), 0 FROM target WHERE order_date IS NOT NULL
+                ON CONFLICT (bucket_start, slot) DO NOTHING
+            )
+            INSERT INTO %3$s (bucket_start, slot)
+            SELECT DISTINCT date_trunc('day', order_date), 0 FROM target WHERE order_date IS NOT NULL
+            ON CONFLICT (bucket_start, slot) DO NOTHING
+            """.formatted(targetQuery, HOURLY, DAILY));
+        for (String[] rollup : new String[][]{{HOURLY, "hour"}, {DAILY, "day"}}) {
+            statements.add("""
+                WITH target AS (%1$s)
+                SELECT b.slot FROM %2$s b
+                WHERE b.bucket_start IN (SELECT date_trunc('%3$s', order_date) FROM target)
+                ORDER BY b.bucket_start, b.slot
+                FOR UPDATE
+                """.formatted(targetQuery, rollup[0], rollup[1]));
+        }
+        return statements;
+    }
+
+    // Полный пересчет сводок по таблице orders. Запись заказов на время пересчета блокируется.
+    static void rebuild(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("LOCK TABLE orders IN SHARE MODE");
+            stmt.execute("DELETE FROM product_sales");
+            stmt.execute("""
+                INSERT INTO product_sales (product_id, units_sold, revenue)
+                SELECT product_id, sum(quantity), sum(total_amount)
+                FROM orders
+                GROUP BY product_id
+                """);
+            // Как и пересчет при удалении, каждый интервал сводится в одну строку слота 0
+            for (String[] rollup : new String[][]{{HOURLY, "hour"}, {DAILY, "day"}}) {
+                stmt.execute("DELETE FROM " + rollup[0]);
+                stmt.execute("""
+                    INSERT INTO %s (bucket_start, slot, order_count, revenue, first_order, last_order)
+                    SELECT date_trunc('%s', order_date), 0, count(*), sum(total_amount), min(order_date), max(order_date)
+                    FROM orders
+                    WHERE order_date IS NOT NULL
+                    GROUP BY 1
+                    """.formatted(rollup[0], rollup[1]));
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package project;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Групповая фиксация заказов: вызывающие кладут заказы в ограниченную очередь и получают
+// CompletableFuture с ID, а фоновый поток собирает накопившиеся заказы в один многострочный
+// INSERT на коммит (не больше maxBatchSize заказов и не дольше lingerMs ожидания).
+// Если очередь заполнена, submit ждет до offerTimeoutMs, затем отклоняет заказ.
+// Переданный Order фоновый поток не меняет: ID нового заказа возвращается только через future.
+public class OrderIngestionQueue implements AutoCloseable {
+    private final DatabaseManager dbManager;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long offerTimeoutMs;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Метрики
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedOrders = new LongAdder();
+    private final LongAccumulator maxBatch = new LongAccumulator(Math::max, 0);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    public OrderIngestionQueue(DatabaseManager dbManager, int capacity, int maxBatchSize,
+                               long lingerMs, long offerTimeoutMs) {
+        this.dbManager = dbManager;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.writer = new Thread(this::writeLoop, "order-ingestion-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public CompletableFuture<Long> submit(Order order) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new RejectedExecutionException("Очередь заказов остановлена"));
+            return future;
+        }
+        try {
+            Pending pending = new Pending(order, future);
+            if (queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                submitted.increment();
+                // Гонка с close(): писатель мог завершиться, не увидев этот заказ
+                if (!running && !writer.isAlive() && queue.remove(pending)) {
+                    future.completeExceptionally(new RejectedExecutionException("Очередь заказов остановлена"));
+                }
+            } else {
+                rejected.increment();
+                future.completeExceptionally(new RejectedExecutionException(
+                        "Очередь заказов переполнена (" + queue.size() + " в ожидании)"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Ждем попутчиков не дольше lingerNanos
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // close() дожидается опустошения очереди, прерывание означает немедленную остановку
+                running = false;
+                for (Pending pending : batch) {
+                    pending.future.completeExceptionally(new RejectedExecutionException("Очередь заказов остановлена"));
+                }
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        // Все, что не успели записать, отклоняем
+        Pending left;
+        while ((left = queue.poll()) != null) {
+            left.future.completeExceptionally(new RejectedExecutionException("Очередь заказов остановлена"));
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        batches.increment();
+        batchedOrders.add(batch.size());
+        maxBatch.accumulate(batch.size());
+        dbManager.getMetrics().recordBatch("ingest", batch.size());
+
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            orders.add(pending.order);
+        }
+
+        try {
+            BatchInsertResult result = dbManager.createOrders(orders);
+            for (int i = 0; i < batch.size(); i++) {
+                Pending pending = batch.get(i);
+                String failure = result.getFailures().get(i);
+                if (failure == null) {
+                    complete(pending, result.getIds().get(i));
+                } else {
+                    failed.increment();
+                    pending.future.completeExceptionally(new SQLException(failure));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (Pending pending : batch) {
+                failed.increment();
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void complete(Pending pending, Long id) {
+        long latency = System.nanoTime() - pending.enqueuedAt;
+        completed.increment();
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulate(latency);
+        pending.future.complete(id);
+    }
+
+    // Останавливает прием и дожидается записи уже принятых заказов
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+    }
+
+    public int getQueueSize() { return queue.size(); }
+    public long getSubmitted() { return submitted.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getFailed() { return failed.sum(); }
+    public long getBatches() { return batches.sum(); }
+    public long getMaxBatchSize() { return maxBatch.get(); }
+
+    public double getAvgBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) batchedOrders.sum() / count;
+    }
+
+    // Время от submit до подтверждения коммита
+    public double getAvgLatencyMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / 1_000_000.0 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OrderIngestion[принято: %d, отклонено: %d, ошибок: %d, пакетов: %d, " +
+                        "ср. пакет: %.1f, макс. пакет: %d, ср. задержка: %.2f мс, макс. задержка: %.2f мс]",
+                getSubmitted(), getRejected(), getFailed(), getBatches(),
+                getAvgBatchSize(), getMaxBatchSize(), getAvgLatencyMillis(), getMaxLatencyMillis());
+    }
+
+    private static final class Pending {
+        private final Order order;
+        private final CompletableFuture<Long> future;
+        private final long enqueuedAt = System.nanoTime();
+
+        private Pending(Order order, CompletableFuture<Long> future) {
+            this.order = order;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package project;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+// Страница ленты заказов и токен продолжения для следующей страницы
+public class OrderPage {
+    private final List<Order> orders;
+    private final String nextPageToken;
+
+    public OrderPage(List<Order> orders, String nextPageToken) {
+        this.orders = orders;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Order> getOrders() { return orders; }
+
+    // null, если это последняя страница
+    public String getNextPageToken() { return nextPageToken; }
+
+    public boolean hasNext() { return nextPageToken != null; }
+
+    // Токен - позиция последнего заказа страницы в порядке (order_date, id)
+    static String encodeToken(LocalDateTime orderDate, long id) {
+        String position = orderDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decodeToken(String token) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf('|');
+            return new Cursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Некорректный токен страницы: " + token, e);
+        }
+    }
+
+    static final class Cursor {
+        final LocalDateTime orderDate;
+        final long id;
+
+        Cursor(LocalDateTime orderDate, long id) {
+            this.orderDate = orderDate;
+            this.id = id;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OrderPage[Orders: %d, HasNext: %s]", orders.size(), hasNext());
+    }
+}
@@ -0,0 +1,405 @@
+package project;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Секционирование orders по месяцам (PARTITION BY RANGE (order_date)).
+// Секции orders_pYYYY_MM создаются заранее на futureMonths вперед (не меньше одного месяца) при миграциях
+// и затем периодически (DatabaseManager.schedulePartitionMaintenance); заказы вне созданных секций
+// попадают в orders_default и переносятся в свою секцию при ее создании.
+// Индексы создаются на родительской таблице и наследуются каждой секцией.
+public class OrderPartitioning {
+    static final String DEFAULT_PARTITION = "orders_default";
+    // Ключ pg_advisory_xact_lock для создания секций: узлы создают их одновременно
+    private static final long PARTITION_LOCK_KEY = 0x6f72646572735f32L;
+    // Журнал изменений orders на время переноса в секционированную таблицу
+    private static final String CHANGES_TABLE = "orders_partition_changes";
+    private static final String NEW_INDEX_SUFFIX = "_part";
+    private static final long COPY_BATCH_IDS = 50_000;
+    private static final int MAX_CATCH_UP_ROUNDS = 5;
+    private static final String COPY_ROWS_SQL = """
+            INSERT INTO orders_partitioned (id, product_id, customer_id, status_id, quantity, total_amount, order_date)
+            SELECT id, product_id, customer_id, status_id, quantity, total_amount, coalesce(order_date, CURRENT_TIMESTAMP)
+            FROM orders
+            """;
+    private static final Pattern SCANNED_PARTITION = Pattern.compile(" on (orders_(?:p\\d{4}_\\d{2}|default))\\b");
+
+    private static final String COLUMNS = """
+                id INTEGER NOT NULL DEFAULT nextval('orders_id_seq'),
+                product_id INTEGER NOT NULL,
+                customer_id INTEGER NOT NULL,
+                status_id INTEGER NOT NULL,
+                quantity INTEGER NOT NULL CHECK (quantity > 0),
+                total_amount DECIMAL(10,2) NOT NULL CHECK (total_amount >= 0),
+                order_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (id, order_date)
+            """;
+
+    private final DatabaseManager dbManager;
+    private final int futureMonths;
+
+    public OrderPartitioning(DatabaseManager dbManager, int futureMonths) {
+        this.dbManager = dbManager;
+        // Секция следующего месяца должна существовать до его начала, иначе заказы уйдут в orders_default
+        this.futureMonths = Math.max(1, futureMonths);
+    }
+
+    public boolean isPartitioned() throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            return isPartitioned(conn);
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('public.orders')")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    // Шаг миграций: перенос orders в секционированную таблицу и секции наперед. Выполняется под
+    // блокировкой MigrationEngine и записывается в schema_version; вне транзакции, т.к. перенос
+    // сам делит работу на короткие транзакции. Прерванный шаг при следующем запуске начинается заново.
+    public MigrationEngine.Migration migration(int version, String description) {
+        return MigrationEngine.nonTransactional(version, description, COLUMNS + COPY_ROWS_SQL, conn -> {
+            if (!isPartitioned(conn)) {
+                migrateExistingTable(conn);
+            }
+            ensureFuturePartitions(conn);
+            verifyPartitionPruning();
+        });
+    }
+
+    // Перенос существующей несекционированной orders в секционированную без долгой блокировки записи.
+    // Строки копируются пачками по диапазонам id, пока orders доступна на чтение и запись; изменения,
+    // сделанные во время копирования, триггер пишет в CHANGES_TABLE, и они догоняются повторным копированием.
+    // ACCESS EXCLUSIVE берется только в конце - на догон последних изменений и переименование таблиц.
+    // ID, последовательность, индексы и внешние ключи сохраняются. PRIMARY KEY секционированной таблицы
+    // включает order_date, поэтому пустая дата заменяется временем переноса.
+    // Выполняется вне транзакции (conn в autocommit); остатки прерванного переноса удаляются в начале.
+    public void migrateExistingTable(Connection conn) throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Statement stmt = conn.createStatement()) {
+            dropConversionLeftovers(stmt);
+
+            // С этого момента каждое изменение orders оставляет запись с id строки
+            stmt.execute("CREATE UNLOGGED TABLE " + CHANGES_TABLE + " (id INTEGER NOT NULL)");
+            stmt.execute("""
+                CREATE FUNCTION orders_partition_track() RETURNS trigger AS $$
+                BEGIN
+                    IF TG_OP = 'DELETE' THEN
+                        INSERT INTO %1$s (id) VALUES (OLD.id);
+                    ELSE
+                        INSERT INTO %1$s (id) VALUES (NEW.id);
+                    END IF;
+                    RETURN NULL;
+                END
+                $$ LANGUAGE plpgsql
+                """.formatted(CHANGES_TABLE));
+            stmt.execute("CREATE TRIGGER orders_partition_track AFTER INSERT OR UPDATE OR DELETE ON orders " +
+                    "FOR EACH ROW EXECUTE FUNCTION orders_partition_track()");
+
+            YearMonth first = YearMonth.now();
+            long maxId = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT min(order_date), coalesce(max(id), 0) FROM orders")) {
+                if (rs.next()) {
+                    if (rs.getTimestamp(1) != null) {
+                        first = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+                    }
+                    maxId = rs.getLong(2);
+                }
+            }
+
+            // Индексы старой таблицы, кроме первичного ключа: строятся на новой под временными именами
+            List<String> indexNames = new ArrayList<>();
+            List<String> indexes = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("""
+                    SELECT indexname, indexdef FROM pg_indexes
+                    WHERE schemaname = 'public' AND tablename = 'orders' AND indexname <> 'orders_pkey'
+                    """)) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    indexNames.add(name);
+                    indexes.add(rs.getString(2).replaceFirst(
+                            " INDEX " + Pattern.quote(name) + " ON (ONLY )?public\\.orders ",
+                            " INDEX " + name + NEW_INDEX_SUFFIX + " ON public.orders_partitioned "));
+                }
+            }
+            List<String> foreignKeys = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("""
+                    SELECT 'ALTER TABLE orders_partitioned ADD CONSTRAINT ' || conname || ' ' || pg_get_constraintdef(oid)
+                    FROM pg_constraint
+                    WHERE conrelid = 'orders'::regclass AND contype = 'f'
+                    """)) {
+                while (rs.next()) {
+                    foreignKeys.add(rs.getString(1));
+                }
+            }
+
+            stmt.execute("CREATE TABLE orders_partitioned (" + COLUMNS + ") PARTITION BY RANGE (order_date)");
+            stmt.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF orders_partitioned DEFAULT");
+            YearMonth last = YearMonth.now().plusMonths(futureMonths);
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                stmt.execute(createPartitionSql("orders_partitioned", month));
+            }
+            for (String sql : foreignKeys) {
+                stmt.execute(sql);
+            }
+
+            // Каждая пачка - отдельная короткая транзакция; строки orders не блокируются
+            long copied = 0;
+            for (long from = 0; from < maxId; from += COPY_BATCH_IDS) {
+                copied += stmt.executeUpdate(COPY_ROWS_SQL + " WHERE id > " + from + " AND id <= " + (from + COPY_BATCH_IDS));
+            }
+            // Новая таблица еще никем не используется: индексы строятся обычным CREATE INDEX
+            for (String sql : indexes) {
+                stmt.execute(sql);
+            }
+            // Догон изменений без блокировки, пока их не станет немного
+            for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+                if (inTransaction(conn, () -> syncChanges(stmt)) < COPY_BATCH_IDS) {
+                    break;
+                }
+            }
+
+            inTransaction(conn, () -> {
+                stmt.execute("LOCK TABLE orders IN ACCESS EXCLUSIVE MODE");
+                syncChanges(stmt);
+                // Последовательность принадлежит старой таблице и удалилась бы вместе с ней
+                stmt.execute("ALTER SEQUENCE orders_id_seq OWNED BY NONE");
+                stmt.execute("DROP TABLE orders");
+                stmt.execute("ALTER TABLE orders_partitioned RENAME TO orders");
+                stmt.execute("ALTER TABLE orders RENAME CONSTRAINT orders_partitioned_pkey TO orders_pkey");
+                stmt.execute("ALTER SEQUENCE orders_id_seq OWNED BY orders.id");
+                for (String name : indexNames) {
+                    stmt.execute("ALTER INDEX " + name + NEW_INDEX_SUFFIX + " RENAME TO " + name);
+                }
+                stmt.execute("DROP TABLE " + CHANGES_TABLE);
+                stmt.execute("DROP FUNCTION orders_partition_track()");
+                return 0;
+            });
+            System.out.printf(" orders перенесена в секционированную таблицу (%d заказов, %d мс)%n",
+                    copied, System.currentTimeMillis() - start);
+        }
+    }
+
+    // Повторное копирование строк, измененных после копирования своей пачки. Записи журнала,
+    // добавленные еще не зафиксированными транзакциями, этой транзакции не видны и останутся на следующий раз.
+    private static int syncChanges(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TEMP TABLE orders_partition_sync ON COMMIT DROP AS SELECT id FROM " + CHANGES_TABLE + " WITH NO DATA");
+        int changed = stmt.executeUpdate("WITH taken AS (DELETE FROM " + CHANGES_TABLE + " RETURNING id) " +
+                "INSERT INTO orders_partition_sync SELECT DISTINCT id FROM taken");
+        if (changed > 0) {
+            stmt.executeUpdate("DELETE FROM orders_partitioned p USING orders_partition_sync s WHERE p.id = s.id");
+            stmt.executeUpdate(COPY_ROWS_SQL + " WHERE id IN (SELECT id FROM orders_partition_sync)");
+        }
+        return changed;
+    }
+
+    private static void dropConversionLeftovers(Statement stmt) throws SQLException {
+        stmt.execute("DROP TRIGGER IF EXISTS orders_partition_track ON orders");
+        stmt.execute("DROP FUNCTION IF EXISTS orders_partition_track()");
+        stmt.execute("DROP TABLE IF EXISTS orders_partitioned, " + CHANGES_TABLE);
+    }
+
+    @FunctionalInterface
+    private interface TransactionBody {
+        int run() throws SQLException;
+    }
+
+    private static int inTransaction(Connection conn, TransactionBody body) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            int result = body.run();
+            conn.commit();
+            return result;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    public int ensureFuturePartitions() throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            return ensureFuturePartitions(conn);
+        }
+    }
+
+    // Создает недостающие секции от текущего месяца на futureMonths вперед; возвращает число созданных.
+    // Пока orders не секционирована (перенос еще не выполнен), ничего не делает.
+    private int ensureFuturePartitions(Connection conn) throws SQLException {
+        YearMonth current = YearMonth.now();
+        return ensurePartitions(conn, current, current.plusMonths(futureMonths));
+    }
+
+    // Секции для всех месяцев интервала [from, to] - например, для исторических дат DataGenerator,
+    // которые иначе целиком легли бы в orders_default
+    public int ensurePartitions(LocalDateTime from, LocalDateTime to) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            return ensurePartitions(conn, YearMonth.from(from), YearMonth.from(to));
+        }
+    }
+
+    private int ensurePartitions(Connection conn, YearMonth first, YearMonth last) throws SQLException {
+        if (!isPartitioned(conn)) {
+            return 0;
+        }
+        int created = 0;
+        List<String> existing = listPartitions(conn);
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            if (!existing.contains(partitionName(month)) && attachPartition(conn, month)) {
+                created++;
+            }
+        }
+        if (created > 0) {
+            System.out.println(" Создано секций orders: " + created);
+        }
+        return created;
+    }
+
+    // Секция создается отдельной таблицей и подключается ATTACH PARTITION: так можно сначала
+    // перенести в нее заказы этого месяца, успевшие попасть в orders_default.
+    // Узлы создают секции одновременно (при старте и по расписанию): под pg_advisory_xact_lock
+    // наличие секции проверяется заново, и уже созданную другим узлом секцию шаг пропускает.
+    // Возвращает false, если секция уже есть.
+    private boolean attachPartition(Connection conn, YearMonth month) throws SQLException {
+        String name = partitionName(month);
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT pg_advisory_xact_lock(" + PARTITION_LOCK_KEY + ")");
+            try (PreparedStatement exists = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+                exists.setString(1, name);
+                try (ResultSet rs = exists.executeQuery()) {
+                    if (rs.next() && rs.getBoolean(1)) {
+                        conn.commit();
+                        return false;
+                    }
+                }
+            }
+            stmt.execute("CREATE TABLE " + name + " (LIKE orders INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            try (PreparedStatement move = conn.prepareStatement("""
+                    WITH moved AS (
+                        DELETE FROM %s WHERE order_date >= ? AND order_date < ?
+                        RETURNING *
+                    )
+                    INSERT INTO %s SELECT * FROM moved
+                    """.formatted(DEFAULT_PARTITION, name))) {
+                move.setTimestamp(1, from);
+                move.setTimestamp(2, to);
+                int moved = move.executeUpdate();
+                if (moved > 0) {
+                    System.out.println(" Из " + DEFAULT_PARTITION + " в " + name + " перенесено заказов: " + moved);
+                }
+            }
+            stmt.execute("ALTER TABLE orders ATTACH PARTITION " + name + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static String createPartitionSql(String parent, YearMonth month) {
+        return "CREATE TABLE " + partitionName(month) + " PARTITION OF " + parent +
+                " FOR VALUES FROM ('" + month.atDay(1).atStartOfDay() + "') TO ('" +
+                month.plusMonths(1).atDay(1).atStartOfDay() + "')";
+    }
+
+    static String partitionName(YearMonth month) {
+        return String.format("orders_p%04d_%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private static List<String> listPartitions(Connection conn) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = 'orders'::regclass")) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        return partitions;
+    }
+
+    // Проверка отсечения секций для запросов DatabaseManager с фильтром по дате (EXPLAIN тех же
+    // SQL-констант с параметрами, которые подставил бы сам метод). Интервал внутри месяца должен
+    // читать одну секцию, лента заказов - не читать секции новее курсора.
+    // Возвращает true, если отсечение работает для всех запросов.
+    public boolean verifyPartitionPruning() throws SQLException {
+        // Интервал с неполными часами на обоих краях, чтобы запрос читал orders
+        LocalDateTime from = YearMonth.now().atDay(1).atStartOfDay().plusMinutes(30);
+        LocalDateTime to = from.plusDays(2);
+        Object[] statsParameters = DatabaseManager.orderStatsBounds(from, to);
+
+        try (Connection conn = dbManager.getConnection()) {
+            int total = listPartitions(conn).size();
+            Probe[] probes = {
+                    new Probe("getOrderStats", DatabaseManager.ORDER_STATS_RANGE_SQL, 1, statsParameters),
+                    // Следующая страница ленты с курсором в текущем месяце
+                    new Probe("getRecentOrdersPage", DatabaseManager.RECENT_ORDERS_NEXT_PAGE_SQL, total - futureMonths,
+                            to, Long.MAX_VALUE, to, 21)
+            };
+
+            boolean pruned = true;
+            for (Probe probe : probes) {
+                List<String> scanned = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + probe.sql)) {
+                    for (int i = 0; i < probe.parameters.length; i++) {
+                        Object parameter = probe.parameters[i];
+                        if (parameter instanceof LocalDateTime time) {
+                            stmt.setTimestamp(i + 1, Timestamp.valueOf(time));
+                        } else {
+                            stmt.setObject(i + 1, parameter);
+                        }
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Matcher matcher = SCANNED_PARTITION.matcher(rs.getString(1));
+                            if (matcher.find() && !scanned.contains(matcher.group(1))) {
+                                scanned.add(matcher.group(1));
+                            }
+                        }
+                    }
+                }
+                boolean ok = scanned.size() <= probe.maxPartitions;
+                pruned &= ok;
+                System.out.printf(" Отсечение секций [%s]: читается %d из %d секций %s%n",
+                        probe.name, scanned.size(), total, ok ? "- OK" : "- НЕ РАБОТАЕТ " + scanned);
+            }
+            return pruned;
+        }
+    }
+
+    private static final class Probe {
+        private final String name;
+        private final String sql;
+        private final int maxPartitions;
+        private final Object[] parameters;
+
+        private Probe(String name, String sql, int maxPartitions, Object... parameters) {
+            this.name = name;
+            this.sql = sql;
+            this.maxPartitions = maxPartitions;
+            this.parameters = parameters;
+        }
+    }
+}
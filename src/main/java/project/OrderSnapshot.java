@@ -0,0 +1,513 @@
+package project;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Колоночный снимок таблицы orders в памяти для аналитики без обращений к БД.
+// Каждый столбец - примитивный массив (около 40 байт на заказ): суммы в копейках,
+// даты - миллисекунды эпохи в UTC (order_date хранится без часового пояса, как в DataGenerator).
+// Загрузка идет потоковым COPY (SELECT ...) TO STDOUT, строки разбираются прямо из байтов.
+// Догрузка (refresh) читает только новые заказы и товары (id больше последнего загруженного). Изменения и удаления
+// уже загруженных заказов и категорий, а также заказы, зафиксированные позже заказа с большим id, появляются
+// после полной перезагрузки (reload), которая выполняется раз в fullReloadIntervalMs.
+// Агрегаты считаются параллельно (fork/join) по опубликованному срезу Columns. Догрузка дописывает
+// массивы только за пределами опубликованного size, поэтому чтение не блокируется.
+public class OrderSnapshot {
+    public enum GroupBy { ALL, CATEGORY, STATUS, CUSTOMER, PRODUCT }
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    // Минимум строк на одну задачу fork/join
+    private static final int LEAF_ROWS = 1 << 16;
+    // Задач на поток пула: у каждой своя таблица групп, при большом числе групп слияние дорогое
+    private static final int TASKS_PER_THREAD = 4;
+    // order_date IS NULL: такие заказы не попадают в фильтр по датам
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final String NO_CATEGORY = "Без категории";
+    private static final String COPY_SQL = """
+            COPY (SELECT id, product_id, customer_id, status_id, quantity,
+                         (total_amount * 100)::bigint,
+                         (extract(epoch FROM order_date) * 1000)::bigint
+                  FROM orders WHERE id > %d ORDER BY id) TO STDOUT
+            """;
+
+    private final DatabaseManager dbManager;
+    private final long refreshIntervalMs;
+    private final long fullReloadIntervalMs;
+    private volatile Columns columns = new Columns(new Storage(0), 0, 0);
+    private Storage storage;
+    private long lastReload;
+    private ScheduledExecutorService refresher;
+
+    public OrderSnapshot(DatabaseManager dbManager, long refreshIntervalMs, long fullReloadIntervalMs) {
+        this.dbManager = dbManager;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.fullReloadIntervalMs = fullReloadIntervalMs;
+    }
+
+    public synchronized void start() throws SQLException {
+        if (refresher != null) {
+            return;
+        }
+        reload();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-snapshot-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                if (System.currentTimeMillis() - lastReload >= fullReloadIntervalMs) {
+                    reload();
+                } else {
+                    refresh();
+                }
+            } catch (SQLException e) {
+                System.err.println("Ошибка обновления снимка заказов: " + e.getMessage());
+            }
+        }, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (refresher == null) {
+            return;
+        }
+        refresher.shutdownNow();
+        refresher = null;
+    }
+
+    // Полная загрузка в новые массивы; до замены запросы идут по старому снимку
+    public synchronized long reload() throws SQLException {
+        return dbManager.getMetrics().time("orderSnapshotReload", () -> {
+            Storage fresh = new Storage(INITIAL_CAPACITY);
+            long rows = load(fresh);
+            storage = fresh;
+            lastReload = System.currentTimeMillis();
+            return rows;
+        });
+    }
+
+    // Догрузка заказов с id больше последнего загруженного; возвращает число новых строк
+    public synchronized long refresh() throws SQLException {
+        if (storage == null) {
+            return reload();
+        }
+        return dbManager.getMetrics().time("orderSnapshotRefresh", () -> load(storage));
+    }
+
+    private long load(Storage target) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            // Сначала товары: категории новых заказов должны быть уже известны
+            loadCategories(conn, target);
+
+            CopyOut copy = conn.unwrap(PGConnection.class).getCopyAPI()
+                    .copyOut(String.format(COPY_SQL, target.maxOrderId));
+            RowParser parser = new RowParser();
+            long rows = 0;
+            try {
+                byte[] row;
+                // COPY TO отдает по одной строке в сообщении
+                while ((row = copy.readFromCopy()) != null) {
+                    parser.reset(row);
+                    target.append(parser.nextLong(), (int) parser.nextLong(), (int) parser.nextLong(),
+                            (int) parser.nextLong(), (int) parser.nextLong(), parser.nextLong(),
+                            parser.nextLongOr(NO_DATE));
+                    rows++;
+                }
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+            // Публикация после заполнения: запросы видят только целиком загруженные строки
+            columns = new Columns(target, target.size, target.maxOrderId);
+            return rows;
+        }
+    }
+
+    private void loadCategories(Connection conn, Storage target) throws SQLException {
+        String sql = "SELECT id, category FROM products WHERE id > ? ORDER BY id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, target.maxProductId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                target.setCategory((int) rs.getLong(1), rs.getString(2));
+            }
+        }
+    }
+
+    // Итоги по группам для заказов с from <= order_date < to (null - без границы) и статусом statusId
+    // (null - любой). Группы отсортированы по выручке по убыванию, limit <= 0 - все группы.
+    public List<OrderTotals> aggregate(GroupBy groupBy, LocalDateTime from, LocalDateTime to, Long statusId,
+                                       int limit) throws SQLException {
+        Columns view = columns;
+        Filter filter = new Filter(
+                from != null ? from.toInstant(ZoneOffset.UTC).toEpochMilli() : Long.MIN_VALUE,
+                to != null ? to.toInstant(ZoneOffset.UTC).toEpochMilli() : Long.MAX_VALUE,
+                statusId != null ? statusId.intValue() : -1);
+        GroupTable groups = view.size == 0
+                ? new GroupTable()
+                : ForkJoinPool.commonPool().invoke(new Aggregation(view, groupBy, filter, leafRows(view.size), 0, view.size));
+
+        if (limit > 0 && limit < groups.size) {
+            List<OrderTotals> top = new ArrayList<>(limit);
+            for (int slot : groups.topSlots(limit)) {
+                top.add(totalsAt(view, groupBy, groups, slot));
+            }
+            return top;
+        }
+        List<OrderTotals> result = new ArrayList<>(groups.size);
+        for (int slot = 0; slot < groups.keys.length; slot++) {
+            if (groups.keys[slot] != GroupTable.EMPTY) {
+                result.add(totalsAt(view, groupBy, groups, slot));
+            }
+        }
+        result.sort(Comparator.comparingLong(OrderTotals::getRevenueCents).reversed());
+        return result;
+    }
+
+    private OrderTotals totalsAt(Columns view, GroupBy groupBy, GroupTable groups, int slot) throws SQLException {
+        int key = groups.keys[slot];
+        return new OrderTotals(key, nameOf(view, groupBy, key),
+                groups.counts[slot], groups.units[slot], groups.revenue[slot]);
+    }
+
+    private static int leafRows(int rows) {
+        return Math.max(LEAF_ROWS, rows / (ForkJoinPool.commonPool().getParallelism() * TASKS_PER_THREAD));
+    }
+
+    // Итог по всем заказам, попавшим в фильтр
+    public OrderTotals totals(LocalDateTime from, LocalDateTime to, Long statusId) throws SQLException {
+        List<OrderTotals> all = aggregate(GroupBy.ALL, from, to, statusId, 0);
+        return all.isEmpty() ? new OrderTotals(0, null, 0, 0, 0) : all.get(0);
+    }
+
+    private String nameOf(Columns view, GroupBy groupBy, int key) throws SQLException {
+        return switch (groupBy) {
+            case CATEGORY -> view.categoryNames[key];
+            case STATUS -> dbManager.getStatusDictionary().nameOf(key);
+            default -> null;
+        };
+    }
+
+    public long getRowCount() {
+        return columns.size;
+    }
+
+    public long getMaxOrderId() {
+        return columns.maxOrderId;
+    }
+
+    @Override
+    public String toString() {
+        Columns view = columns;
+        return String.format("OrderSnapshot[Rows: %d, Max ID: %d, Categories: %d]",
+                view.size, view.maxOrderId, view.categoryNames.length);
+    }
+
+    // Изменяемые столбцы; пишет только поток, держащий монитор OrderSnapshot
+    private static final class Storage {
+        private long[] ids;
+        private int[] productIds;
+        private int[] customerIds;
+        private int[] statusIds;
+        private int[] quantities;
+        private long[] amountCents;
+        private long[] orderDates;
+        private int size;
+        private long maxOrderId;
+
+        // Код категории по ID товара; коды - номера в categoryNames, 0 - без категории
+        private int[] categoryOfProduct = new int[0];
+        private final List<String> categoryNames = new ArrayList<>(List.of(NO_CATEGORY));
+        private final Map<String, Integer> categoryCodes = new HashMap<>();
+        private long maxProductId;
+
+        private Storage(int capacity) {
+            ids = new long[capacity];
+            productIds = new int[capacity];
+            customerIds = new int[capacity];
+            statusIds = new int[capacity];
+            quantities = new int[capacity];
+            amountCents = new long[capacity];
+            orderDates = new long[capacity];
+        }
+
+        private void append(long id, int productId, int customerId, int statusId, int quantity,
+                            long cents, long orderDate) {
+            if (size == ids.length) {
+                // Новые массивы: опубликованные срезы продолжают читать старые
+                int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                productIds = Arrays.copyOf(productIds, capacity);
+                customerIds = Arrays.copyOf(customerIds, capacity);
+                statusIds = Arrays.copyOf(statusIds, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                amountCents = Arrays.copyOf(amountCents, capacity);
+                orderDates = Arrays.copyOf(orderDates, capacity);
+            }
+            ids[size] = id;
+            productIds[size] = productId;
+            customerIds[size] = customerId;
+            statusIds[size] = statusId;
+            quantities[size] = quantity;
+            amountCents[size] = cents;
+            orderDates[size] = orderDate;
+            size++;
+            maxOrderId = id;
+        }
+
+        private void setCategory(int productId, String category) {
+            if (productId >= categoryOfProduct.length) {
+                categoryOfProduct = Arrays.copyOf(categoryOfProduct, Math.max(productId + 1, categoryOfProduct.length * 2));
+            }
+            int code = 0;
+            if (category != null) {
+                code = categoryCodes.computeIfAbsent(category, name -> {
+                    categoryNames.add(name);
+                    return categoryNames.size() - 1;
+                });
+            }
+            categoryOfProduct[productId] = code;
+            maxProductId = Math.max(maxProductId, productId);
+        }
+    }
+
+    // Неизменяемый срез: массивы читаются только в пределах size
+    private static final class Columns {
+        private final long[] ids;
+        private final int[] productIds;
+        private final int[] customerIds;
+        private final int[] statusIds;
+        private final int[] quantities;
+        private final long[] amountCents;
+        private final long[] orderDates;
+        private final int[] categoryOfProduct;
+        private final String[] categoryNames;
+        private final int size;
+        private final long maxOrderId;
+
+        private Columns(Storage storage, int size, long maxOrderId) {
+            this.ids = storage.ids;
+            this.productIds = storage.productIds;
+            this.customerIds = storage.customerIds;
+            this.statusIds = storage.statusIds;
+            this.quantities = storage.quantities;
+            this.amountCents = storage.amountCents;
+            this.orderDates = storage.orderDates;
+            this.categoryOfProduct = storage.categoryOfProduct;
+            this.categoryNames = storage.categoryNames.toArray(new String[0]);
+            this.size = size;
+            this.maxOrderId = maxOrderId;
+        }
+
+        private int categoryOf(int productId) {
+            return productId < categoryOfProduct.length ? categoryOfProduct[productId] : 0;
+        }
+    }
+
+    // fromMillis включительно, toMillis не включительно; statusId = -1 - любой статус
+    private static final class Filter {
+        private final long fromMillis;
+        private final long toMillis;
+        private final int statusId;
+
+        private Filter(long fromMillis, long toMillis, int statusId) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.statusId = statusId;
+        }
+    }
+
+    // Задача не сериализуется (ForkJoinTask лишь объявляет Serializable): поля transient
+    private static final class Aggregation extends RecursiveTask<GroupTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Columns view;
+        private final transient GroupBy groupBy;
+        private final transient Filter filter;
+        private final transient int leafRows;
+        private final transient int from;
+        private final transient int to;
+
+        private Aggregation(Columns view, GroupBy groupBy, Filter filter, int leafRows, int from, int to) {
+            this.view = view;
+            this.groupBy = groupBy;
+            this.filter = filter;
+            this.leafRows = leafRows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected GroupTable compute() {
+            if (to - from > leafRows) {
+                int middle = (from + to) >>> 1;
+                Aggregation left = new Aggregation(view, groupBy, filter, leafRows, from, middle);
+                left.fork();
+                GroupTable right = new Aggregation(view, groupBy, filter, leafRows, middle, to).compute();
+                GroupTable merged = left.join();
+                merged.merge(right);
+                return merged;
+            }
+
+            GroupTable groups = new GroupTable();
+            long fromMillis = filter.fromMillis;
+            long toMillis = filter.toMillis;
+            int statusId = filter.statusId;
+            for (int i = from; i < to; i++) {
+                long date = view.orderDates[i];
+                if (date < fromMillis || date >= toMillis || (statusId >= 0 && view.statusIds[i] != statusId)) {
+                    continue;
+                }
+                int key = switch (groupBy) {
+                    case ALL -> 0;
+                    case CATEGORY -> view.categoryOf(view.productIds[i]);
+                    case STATUS -> view.statusIds[i];
+                    case CUSTOMER -> view.customerIds[i];
+                    case PRODUCT -> view.productIds[i];
+                };
+                groups.add(key, 1, view.quantities[i], view.amountCents[i]);
+            }
+            return groups;
+        }
+    }
+
+    // Хэш-таблица с открытой адресацией: ключ группы -> счетчики в параллельных массивах
+    private static final class GroupTable {
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        private int[] keys;
+        private long[] counts;
+        private long[] units;
+        private long[] revenue;
+        private int size;
+
+        private GroupTable() {
+            allocate(16);
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            counts = new long[capacity];
+            units = new long[capacity];
+            revenue = new long[capacity];
+        }
+
+        private void add(int key, long count, long quantity, long cents) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) {
+                    if (size * 2 >= keys.length) {
+                        grow();
+                        add(key, count, quantity, cents);
+                        return;
+                    }
+                    keys[slot] = key;
+                    size++;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            counts[slot] += count;
+            units[slot] += quantity;
+            revenue[slot] += cents;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldCounts = counts;
+            long[] oldUnits = units;
+            long[] oldRevenue = revenue;
+            allocate(oldKeys.length * 2);
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) {
+                    add(oldKeys[slot], oldCounts[slot], oldUnits[slot], oldRevenue[slot]);
+                }
+            }
+        }
+
+        // Слоты limit групп с наибольшей выручкой по убыванию: отбор вставками без объекта на каждую группу
+        private int[] topSlots(int limit) {
+            int[] top = new int[limit];
+            int found = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == EMPTY || (found == limit && revenue[slot] <= revenue[top[limit - 1]])) {
+                    continue;
+                }
+                int i = found < limit ? found++ : limit - 1;
+                while (i > 0 && revenue[top[i - 1]] < revenue[slot]) {
+                    top[i] = top[i - 1];
+                    i--;
+                }
+                top[i] = slot;
+            }
+            return top;
+        }
+
+        private void merge(GroupTable other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.keys[slot] != EMPTY) {
+                    add(other.keys[slot], other.counts[slot], other.units[slot], other.revenue[slot]);
+                }
+            }
+        }
+    }
+
+    // Разбор строки COPY text: целые числа через табуляцию, \N - NULL
+    private static final class RowParser {
+        private byte[] row;
+        private int pos;
+
+        private void reset(byte[] row) {
+            this.row = row;
+            this.pos = 0;
+        }
+
+        private long nextLong() throws SQLException {
+            long value = nextLongOr(NO_DATE);
+            if (value == NO_DATE) {
+                throw new SQLException("Неожиданный NULL в строке COPY: " + new String(row));
+            }
+            return value;
+        }
+
+        private long nextLongOr(long nullValue) {
+            if (pos + 1 < row.length && row[pos] == '\\' && row[pos + 1] == 'N') {
+                pos += 3;
+                return nullValue;
+            }
+            boolean negative = row[pos] == '-';
+            if (negative) {
+                pos++;
+            }
+            long value = 0;
+            while (pos < row.length && row[pos] != '\t' && row[pos] != '\n') {
+                value = value * 10 + (row[pos++] - '0');
+            }
+            pos++;
+            return negative ? -value : value;
+        }
+    }
+}
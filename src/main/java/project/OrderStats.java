@@ -0,0 +1,38 @@
+package project;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+
+// Статистика заказов за интервал времени
+public class OrderStats {
+    private final long orderCount;
+    private final BigDecimal revenue;
+    private final LocalDateTime firstOrder;
+    private final LocalDateTime lastOrder;
+
+    public OrderStats(long orderCount, BigDecimal revenue, LocalDateTime firstOrder, LocalDateTime lastOrder) {
+        this.orderCount = orderCount;
+        this.revenue = revenue;
+        this.firstOrder = firstOrder;
+        this.lastOrder = lastOrder;
+    }
+
+    public long getOrderCount() { return orderCount; }
+    public BigDecimal getRevenue() { return revenue; }
+    // null, если заказов в интервале нет
+    public LocalDateTime getFirstOrder() { return firstOrder; }
+    public LocalDateTime getLastOrder() { return lastOrder; }
+
+    public BigDecimal getAverageOrderValue() {
+        return orderCount == 0
+                ? BigDecimal.ZERO
+                : revenue.divide(BigDecimal.valueOf(orderCount), 2, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OrderStats[Orders: %d, Revenue: %.2f, Average: %.2f, First: %s, Last: %s]",
+                orderCount, revenue, getAverageOrderValue(), firstOrder, lastOrder);
+    }
+}
@@ -0,0 +1,92 @@
+package project;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Справочник статусов заказов в памяти: имя статуса лежит в массиве по индексу id.
+// Таблица order_status крошечная и почти не меняется, поэтому JOIN с ней в запросах не нужен.
+public class OrderStatusDictionary {
+    // Неизвестный id перечитывает справочник не чаще раза в секунду
+    private static final long RELOAD_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final DatabaseManager dbManager;
+    // Массив заменяется целиком при перезагрузке, читатели видят согласованный снимок
+    private volatile String[] names;
+    private volatile long lastLoad;
+
+    public OrderStatusDictionary(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    public String nameOf(long id) throws SQLException {
+        String name = lookup(id);
+        if (name == null && reloadAllowed()) {
+            // Возможно, статус добавили после загрузки справочника
+            reload();
+            name = lookup(id);
+        }
+        return name;
+    }
+
+    // Статусов единицы, линейный проход по массиву дешевле хеширования строки
+    public Long idOf(String name) throws SQLException {
+        String[] current = loaded();
+        for (int id = 0; id < current.length; id++) {
+            if (name.equals(current[id])) {
+                return (long) id;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void reload() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, name, max(id) OVER () as max_id FROM order_status")) {
+
+            String[] loaded = null;
+            while (rs.next()) {
+                if (loaded == null) {
+                    loaded = new String[rs.getInt("max_id") + 1];
+                }
+                loaded[rs.getInt("id")] = rs.getString("name");
+            }
+            names = loaded != null ? loaded : new String[0];
+            lastLoad = System.nanoTime();
+        }
+    }
+
+    public int size() throws SQLException {
+        int count = 0;
+        for (String name : loaded()) {
+            if (name != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String lookup(long id) throws SQLException {
+        String[] current = loaded();
+        return id >= 0 && id < current.length ? current[(int) id] : null;
+    }
+
+    private String[] loaded() throws SQLException {
+        String[] current = names;
+        if (current == null) {
+            synchronized (this) {
+                if (names == null) {
+                    reload();
+                }
+                current = names;
+            }
+        }
+        return current;
+    }
+
+    private boolean reloadAllowed() {
+        return System.nanoTime() - lastLoad > RELOAD_INTERVAL_NANOS;
+    }
+}
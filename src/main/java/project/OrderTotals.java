@@ -0,0 +1,45 @@
+package project;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Итоги группы заказов из OrderSnapshot: число заказов, единиц товара и выручка
+public class OrderTotals {
+    private final long key;
+    private final String name;
+    private final long orderCount;
+    private final long units;
+    private final long revenueCents;
+
+    public OrderTotals(long key, String name, long orderCount, long units, long revenueCents) {
+        this.key = key;
+        this.name = name;
+        this.orderCount = orderCount;
+        this.units = units;
+        this.revenueCents = revenueCents;
+    }
+
+    // ID группы: код категории, ID статуса, клиента или товара
+    public long getKey() { return key; }
+    // Название категории или статуса; для клиентов и товаров null
+    public String getName() { return name; }
+    public long getOrderCount() { return orderCount; }
+    public long getUnits() { return units; }
+    public long getRevenueCents() { return revenueCents; }
+
+    public BigDecimal getRevenue() {
+        return BigDecimal.valueOf(revenueCents, 2);
+    }
+
+    public BigDecimal getAverageOrderValue() {
+        return orderCount == 0
+                ? BigDecimal.ZERO
+                : getRevenue().divide(BigDecimal.valueOf(orderCount), 2, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OrderTotals[Key: %d, Name: %s, Orders: %d, Units: %d, Revenue: %.2f]",
+                key, name, orderCount, units, getRevenue());
+    }
+}
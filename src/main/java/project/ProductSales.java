@@ -0,0 +1,32 @@
+package project;
+
+import java.math.BigDecimal;
+
+// Продажи товара из сводки product_sales
+public class ProductSales {
+    private final long productId;
+    private final String name;
+    private final String category;
+    private final long unitsSold;
+    private final BigDecimal revenue;
+
+    public ProductSales(long productId, String name, String category, long unitsSold, BigDecimal revenue) {
+        this.productId = productId;
+        this.name = name;
+        this.category = category;
+        this.unitsSold = unitsSold;
+        this.revenue = revenue;
+    }
+
+    public long getProductId() { return productId; }
+    public String getName() { return name; }
+    public String getCategory() { return category; }
+    public long getUnitsSold() { return unitsSold; }
+    public BigDecimal getRevenue() { return revenue; }
+
+    @Override
+    public String toString() {
+        return String.format("ProductSales[ID: %d, Name: %s, Category: %s, Sold: %d, Revenue: %.2f]",
+                productId, name, category, unitsSold, revenue);
+    }
+}
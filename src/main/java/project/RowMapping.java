@@ -0,0 +1,133 @@
+package project;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Отображение строк результата в сущности по номерам столбцов.
+// Номера ищутся по именам один раз для каждого текста запроса (формы выражения) и кэшируются,
+// дальше каждая строка читается только getXxx(int) - без поиска столбца по имени.
+// Запрос выбирает ровно columns() (можно с префиксом таблицы), лишние столбцы по сети не идут.
+final class RowMapping<T> {
+    @FunctionalInterface
+    interface Binder<T> {
+        T map(ResultSet rs, int[] columns) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface Mapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    static final RowMapping<Product> PRODUCT = new RowMapping<>(
+            new String[]{"id", "name", "description", "price", "quantity", "category", "created_at"},
+            (rs, c) -> {
+                Product product = new Product();
+                product.setId(rs.getLong(c[0]));
+                product.setName(rs.getString(c[1]));
+                product.setDescription(rs.getString(c[2]));
+                product.setPrice(rs.getBigDecimal(c[3]));
+                product.setQuantity(rs.getInt(c[4]));
+                product.setCategory(rs.getString(c[5]));
+                product.setCreatedAt(rs.getObject(c[6], LocalDateTime.class));
+                return product;
+            });
+
+    // Товар без описания и даты создания - для полных проходов по таблице
+    static final RowMapping<Product> PRODUCT_SUMMARY = new RowMapping<>(
+            new String[]{"id", "name", "price", "quantity", "category"},
+            (rs, c) -> {
+                Product product = new Product();
+                product.setId(rs.getLong(c[0]));
+                product.setName(rs.getString(c[1]));
+                product.setPrice(rs.getBigDecimal(c[2]));
+                product.setQuantity(rs.getInt(c[3]));
+                product.setCategory(rs.getString(c[4]));
+                return product;
+            });
+
+    static final RowMapping<Customer> CUSTOMER = new RowMapping<>(
+            new String[]{"id", "first_name", "last_name", "phone", "email", "created_at"},
+            (rs, c) -> {
+                Customer customer = new Customer();
+                customer.setId(rs.getLong(c[0]));
+                customer.setFirstName(rs.getString(c[1]));
+                customer.setLastName(rs.getString(c[2]));
+                customer.setPhone(rs.getString(c[3]));
+                customer.setEmail(rs.getString(c[4]));
+                customer.setCreatedAt(rs.getObject(c[5], LocalDateTime.class));
+                return customer;
+            });
+
+    static final RowMapping<Customer> CUSTOMER_SUMMARY = new RowMapping<>(
+            new String[]{"id", "first_name", "last_name", "email", "phone"},
+            (rs, c) -> {
+                Customer customer = new Customer();
+                customer.setId(rs.getLong(c[0]));
+                customer.setFirstName(rs.getString(c[1]));
+                customer.setLastName(rs.getString(c[2]));
+                customer.setEmail(rs.getString(c[3]));
+                customer.setPhone(rs.getString(c[4]));
+                return customer;
+            });
+
+    // Строка ленты заказов: заказ с названием товара и именем клиента (без названия статуса)
+    static final RowMapping<Order> ORDER_FEED = new RowMapping<>(
+            new String[]{"id", "product_id", "customer_id", "status_id", "quantity", "total_amount", "order_date",
+                    "product_name", "customer_name"},
+            (rs, c) -> {
+                Order order = new Order();
+                order.setId(rs.getLong(c[0]));
+                order.setProductId(rs.getLong(c[1]));
+                order.setCustomerId(rs.getLong(c[2]));
+                order.setStatusId(rs.getLong(c[3]));
+                order.setQuantity(rs.getInt(c[4]));
+                order.setTotalAmount(rs.getBigDecimal(c[5]));
+                order.setOrderDate(rs.getObject(c[6], LocalDateTime.class));
+                order.setProductName(rs.getString(c[7]));
+                order.setCustomerName(rs.getString(c[8]));
+                return order;
+            });
+
+    private final String[] labels;
+    private final Binder<T> binder;
+    private final Map<String, int[]> columnsBySql = new ConcurrentHashMap<>();
+
+    RowMapping(String[] labels, Binder<T> binder) {
+        this.labels = labels;
+        this.binder = binder;
+    }
+
+    // Список столбцов для SELECT; prefix - алиас таблицы ("p") или пустая строка
+    String columns(String prefix) {
+        String qualifier = prefix.isEmpty() ? "" : prefix + ".";
+        StringBuilder columns = new StringBuilder();
+        for (String label : labels) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(qualifier).append(label);
+        }
+        return columns.toString();
+    }
+
+    String columns() {
+        return columns("");
+    }
+
+    // Отображение для результата запроса sql; номера столбцов берутся из кэша или ищутся в rs
+    Mapper<T> forQuery(String sql, ResultSet rs) throws SQLException {
+        int[] columns = columnsBySql.get(sql);
+        if (columns == null) {
+            columns = new int[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                columns[i] = rs.findColumn(labels[i]);
+            }
+            columnsBySql.put(sql, columns);
+        }
+        int[] resolved = columns;
+        return row -> binder.map(row, resolved);
+    }
+}
@@ -0,0 +1,229 @@
+package project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+// Журнал медленных запросов: каждое выражение, выполненное через пул дольше порога,
+// записывается с временем выполнения и значениями параметров в ротируемый файл (java.util.logging).
+// Для доли медленных читающих запросов фоновый поток повторяет запрос как
+// EXPLAIN (ANALYZE, BUFFERS) в откатываемой транзакции и пишет план туда же (по умолчанию выключено).
+// Для EXPLAIN держится одно собственное подключение мимо пула: повтор медленного запроса
+// не отнимает подключения у приложения как раз тогда, когда оно перегружено.
+// Выражения, которые что-то меняют или берут блокировки, повторно не выполняются.
+public class SlowQueryLog {
+    private static final int MAX_PARAMETER_LENGTH = 200;
+    private static final int EXPLAIN_QUEUE_CAPACITY = 16;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final Pattern READ = Pattern.compile("^\\s*(SELECT|WITH|VALUES|TABLE)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SIDE_EFFECTS = Pattern.compile(
+            "\\b(INSERT|UPDATE|DELETE|MERGE|INTO|FOR\\s+(NO\\s+KEY\\s+)?UPDATE|FOR\\s+(KEY\\s+)?SHARE|" +
+            "pg_advisory\\w*|pg_sleep\\w*|nextval|setval)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final String url;
+    private final Properties driverProperties;
+    private final long thresholdNanos;
+    private final double explainSampleRate;
+    private final long explainTimeoutMs;
+    private final FileHandler handler;
+    private final Logger logger;
+    private final ThreadPoolExecutor explainer;
+    // Используется только потоком explainer; закрывается при ошибке и в close()
+    private volatile Connection explainConnection;
+
+    // file - шаблон имени FileHandler (%g - номер файла при ротации)
+    public SlowQueryLog(String url, Properties driverProperties, long thresholdMs, double explainSampleRate, long explainTimeoutMs,
+                        String file, int fileLimitBytes, int fileCount) throws IOException {
+        this.url = url;
+        this.driverProperties = driverProperties;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.explainSampleRate = explainSampleRate;
+        this.explainTimeoutMs = explainTimeoutMs;
+
+        Path parent = Path.of(file).toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.handler = new FileHandler(file, fileLimitBytes, fileCount, true);
+        handler.setEncoding("UTF-8");
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return TIMESTAMP.format(LocalDateTime.ofInstant(record.getInstant(), ZoneId.systemDefault())) +
+                        " " + record.getMessage() + System.lineSeparator();
+            }
+        });
+        // Свой логгер без родительских обработчиков: записи не дублируются в консоль
+        this.logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+
+        this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(EXPLAIN_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "slow-query-explain");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    // Вызывается после каждого выполнения: parameters[0..parameterCount) - значения параметров
+    // (массив переиспользуется выражением); batchSize > 0 - executeBatch с таким числом наборов параметров
+    void executed(String sql, Object[] parameters, int parameterCount, int batchSize, long nanos, Throwable error) {
+        if (nanos < thresholdNanos || sql == null || sql.stripLeading().regionMatches(true, 0, "EXPLAIN", 0, 7)) {
+            return;
+        }
+        // Снимок до возврата управления: массив параметров вызывающий код может освободить
+        List<Object> snapshot = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+            Object value = parameters[i];
+            snapshot.add(value instanceof Array array ? new ArrayLiteral(array.toString()) : value);
+        }
+        logger.info(String.format(Locale.ROOT, "%.1f мс%s%s | %s | параметры: %s",
+                nanos / 1_000_000.0,
+                batchSize > 0 ? " (пакет из " + batchSize + ")" : "",
+                error != null ? " (ошибка: " + error.getMessage() + ")" : "",
+                oneLine(sql), describe(snapshot)));
+
+        if (error == null && batchSize == 0 && explainSampleRate > 0 && isReadOnly(sql)
+                && ThreadLocalRandom.current().nextDouble() < explainSampleRate) {
+            try {
+                explainer.execute(() -> explain(sql, snapshot));
+            } catch (RejectedExecutionException e) {
+                // Очередь планов заполнена или журнал закрыт - этот план пропускаем
+            }
+        }
+    }
+
+    private void explain(String sql, List<Object> parameters) {
+        StringBuilder plan = new StringBuilder();
+        try {
+            Connection conn = explainConnection();
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET LOCAL statement_timeout = " + explainTimeoutMs);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        Object value = parameters.get(i);
+                        if (value == null) {
+                            stmt.setNull(i + 1, Types.OTHER);
+                        } else if (value instanceof ArrayLiteral array) {
+                            stmt.setObject(i + 1, array.text, Types.OTHER);
+                        } else {
+                            stmt.setObject(i + 1, value);
+                        }
+                    }
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        plan.append(System.lineSeparator()).append("    ").append(rs.getString(1));
+                    }
+                }
+            } finally {
+                // ANALYZE выполняет запрос: все, что он мог изменить, откатывается
+                try {
+                    conn.rollback();
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            logger.info("ПЛАН | " + oneLine(sql) + " | параметры: " + describe(parameters) + plan);
+        } catch (SQLException e) {
+            logger.warning("EXPLAIN не выполнен: " + e.getMessage() + " | " + oneLine(sql));
+            // Состояние подключения после ошибки неизвестно - следующий EXPLAIN откроет новое
+            closeExplainConnection();
+        }
+    }
+
+    private Connection explainConnection() throws SQLException {
+        Connection conn = explainConnection;
+        if (conn == null || conn.isClosed()) {
+            conn = DriverManager.getConnection(url, driverProperties);
+            explainConnection = conn;
+        }
+        return conn;
+    }
+
+    private void closeExplainConnection() {
+        Connection conn = explainConnection;
+        explainConnection = null;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // Подключение и так не используется
+            }
+        }
+    }
+
+    static boolean isReadOnly(String sql) {
+        return READ.matcher(sql).find() && !SIDE_EFFECTS.matcher(sql).find();
+    }
+
+    private static String oneLine(String sql) {
+        return sql.replaceAll("\\s+", " ").trim();
+    }
+
+    private static String describe(List<Object> parameters) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            Object value = parameters.get(i);
+            String shown = value == null ? "NULL"
+                    : value instanceof Number || value instanceof Boolean ? value.toString()
+                    : "'" + value + "'";
+            if (shown.length() > MAX_PARAMETER_LENGTH) {
+                shown = shown.substring(0, MAX_PARAMETER_LENGTH) + "...(" + shown.length() + " симв.)";
+            }
+            text.append(shown);
+        }
+        return text.append(']').toString();
+    }
+
+    public void close() {
+        explainer.shutdownNow();
+        closeExplainConnection();
+        handler.close();
+    }
+
+    // Значение массива (setArray) в текстовом виде PostgreSQL: '{1,2,3}'
+    private static final class ArrayLiteral {
+        private final String text;
+
+        private ArrayLiteral(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package project;
+
+import org.postgresql.PGStatement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// LRU-кэш подготовленных выражений одного физического подключения.
+// Подключение в каждый момент выдано только одному потоку, поэтому синхронизация не нужна.
+class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final int prepareThreshold;
+    private final Counters counters;
+    private final SlowQueryLog slowQueryLog;
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical, int maxSize, int prepareThreshold, Counters counters,
+                   SlowQueryLog slowQueryLog) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.prepareThreshold = prepareThreshold;
+        this.counters = counters;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    // Выдает выражение из кэша или готовит новое; logicalConnection - прокси, который видит вызывающий код
+    PreparedStatement prepare(Connection logicalConnection, String sql, int autoGeneratedKeys) throws SQLException {
+        if (maxSize <= 0) {
+            return wrap(logicalConnection, null, newStatement(sql, autoGeneratedKeys), sql);
+        }
+
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && cached.evicted) {
+            statements.remove(key);
+            cached = null;
+        }
+        if (cached != null && !cached.inUse) {
+            counters.hits.increment();
+            cached.inUse = true;
+            return wrap(logicalConnection, cached, cached.statement, sql);
+        }
+
+        counters.misses.increment();
+        PreparedStatement statement = newStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // То же выражение уже используется (вложенный вызов) - отдаем некэшируемую копию
+            return wrap(logicalConnection, null, statement, sql);
+        }
+
+        CachedStatement entry = new CachedStatement(statement);
+        entry.inUse = true;
+        statements.put(key, entry);
+        evictOverflow();
+        return wrap(logicalConnection, entry, statement, sql);
+    }
+
+    private PreparedStatement newStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        PreparedStatement statement = autoGeneratedKeys == Statement.NO_GENERATED_KEYS
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        // После prepareThreshold выполнений драйвер переводит выражение в серверное (PREPARE на стороне PostgreSQL)
+        if (statement.isWrapperFor(PGStatement.class)) {
+            statement.unwrap(PGStatement.class).setPrepareThreshold(prepareThreshold);
+        }
+        return statement;
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > maxSize && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            it.remove();
+            counters.evictions.increment();
+            if (eldest.inUse) {
+                eldest.evicted = true;
+            } else {
+                closeQuietly(eldest.statement);
+            }
+        }
+    }
+
+    void closeAll() {
+        List<CachedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : all) {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private PreparedStatement wrap(Connection logicalConnection, CachedStatement cached, PreparedStatement statement,
+                                   String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new StatementHandler(logicalConnection, cached, statement, sql, slowQueryLog));
+    }
+
+    // Некэшируемые выражения (createStatement, prepareStatement с другими параметрами) тоже
+    // проходят через замер выполнения; sql = null для Statement
+    Statement wrapUncached(Connection logicalConnection, Statement statement, String sql) {
+        if (statement instanceof CallableStatement) {
+            return statement;
+        }
+        Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(
+                Statement.class.getClassLoader(),
+                new Class<?>[]{type},
+                new StatementHandler(logicalConnection, null, statement, sql, slowQueryLog));
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // Подключение могло быть уже закрыто
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    // Логическое выражение: close() возвращает кэшированное выражение в кэш.
+    // Выполнение замеряется, медленные выражения с параметрами уходят в SlowQueryLog.
+    // Результат executeQuery отдается драйверный, без обертки: строки считают циклы чтения
+    // (RowMapping, потоковое чтение) через Metrics.recordRowsFetched.
+    private static final class StatementHandler implements InvocationHandler {
+        private final Connection logicalConnection;
+        private final CachedStatement cached;
+        private final Statement statement;
+        // null для Statement: текст передается в execute*(sql)
+        private final String sql;
+        private final SlowQueryLog slowQueryLog;
+        // Значения параметров для журнала; массив создается только при включенном журнале
+        // и переиспользуется между выполнениями, parameterCount - число занятых ячеек
+        private Object[] parameters;
+        private int parameterCount;
+        private int batchSize;
+        private boolean closed;
+
+        private StatementHandler(Connection logicalConnection, CachedStatement cached, Statement statement, String sql,
+                                 SlowQueryLog slowQueryLog) {
+            this.logicalConnection = logicalConnection;
+            this.cached = cached;
+            this.statement = statement;
+            this.sql = sql;
+            this.slowQueryLog = slowQueryLog;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return logicalConnection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return statement.toString();
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Выражение уже закрыто");
+            }
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (slowQueryLog != null) {
+                captureParameter(name, args);
+            }
+            return invokeTarget(method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            Throwable error = null;
+            try {
+                return invokeTarget(method, args);
+            } catch (Throwable e) {
+                error = e;
+                throw e;
+            } finally {
+                if (slowQueryLog != null) {
+                    String text = sql != null ? sql : args != null && args[0] instanceof String s ? s : null;
+                    boolean batch = method.getName().contains("Batch");
+                    slowQueryLog.executed(text, parameters, parameterCount, batch ? batchSize : 0,
+                            System.nanoTime() - start, error);
+                    if (batch) {
+                        batchSize = 0;
+                    }
+                }
+            }
+        }
+
+        // setXxx(индекс, значение, ...) запоминает значение параметра для журнала медленных запросов
+        private void captureParameter(String name, Object[] args) {
+            if (name.equals("clearParameters")) {
+                if (parameters != null) {
+                    Arrays.fill(parameters, 0, parameterCount, null);
+                }
+                parameterCount = 0;
+            } else if (name.equals("addBatch") && args == null) {
+                batchSize++;
+            } else if (name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer index && index > 0) {
+                if (parameters == null || parameters.length < index) {
+                    parameters = Arrays.copyOf(parameters != null ? parameters : new Object[0],
+                            Math.max(index, Math.max(8, parameterCount * 2)));
+                }
+                parameters[index - 1] = name.equals("setNull") ? null : args[1];
+                parameterCount = Math.max(parameterCount, index);
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void release() throws SQLException {
+            if (cached == null || cached.evicted) {
+                statement.close();
+                return;
+            }
+            PreparedStatement prepared = cached.statement;
+            try {
+                ResultSet rs = prepared.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                prepared.clearParameters();
+                prepared.clearBatch();
+                prepared.clearWarnings();
+                prepared.setFetchSize(0);
+                prepared.setMaxRows(0);
+                prepared.setQueryTimeout(0);
+                cached.inUse = false;
+            } catch (SQLException e) {
+                // Выражение в неизвестном состоянии - не возвращаем его в кэш
+                cached.evicted = true;
+                prepared.close();
+            }
+        }
+    }
+
+    // Счетчики, общие для кэшей всех подключений пула
+    static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+}
@@ -41,13 +41,54 @@ CREATE TABLE IF NOT EXISTS orders (
     FOREIGN KEY (status_id) REFERENCES order_status(id)
 );
 
+-- 4.1. Журнал изменений остатков (резервирование в памяти, InventoryLedger)
+CREATE TABLE IF NOT EXISTS inventory_journal (
+    id BIGSERIAL PRIMARY KEY,
+    product_id INTEGER NOT NULL REFERENCES products(id),
+    delta INTEGER NOT NULL,
+    order_id INTEGER,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 4.2. Сводка продаж по товарам (поддерживается вместе с заказами)
+CREATE TABLE IF NOT EXISTS product_sales (
+    product_id INTEGER PRIMARY KEY REFERENCES products(id),
+    units_sold BIGINT NOT NULL DEFAULT 0,
+    revenue DECIMAL(14,2) NOT NULL DEFAULT 0
+);
+
+-- 4.3. Почасовые и посуточные свертки заказов (поддерживаются вместе с заказами);
+-- интервал хранится в нескольких строках-слотах, при чтении они складываются
+CREATE TABLE IF NOT EXISTS orders_hourly (
+    bucket_start TIMESTAMP NOT NULL,
+    slot SMALLINT NOT NULL DEFAULT 0,
+    order_count BIGINT NOT NULL DEFAULT 0,
+    revenue DECIMAL(16,2) NOT NULL DEFAULT 0,
+    first_order TIMESTAMP,
+    last_order TIMESTAMP,
+    PRIMARY KEY (bucket_start, slot)
+);
+
+CREATE TABLE IF NOT EXISTS orders_daily (
+    bucket_start TIMESTAMP NOT NULL,
+    slot SMALLINT NOT NULL DEFAULT 0,
+    order_count BIGINT NOT NULL DEFAULT 0,
+    revenue DECIMAL(16,2) NOT NULL DEFAULT 0,
+    first_order TIMESTAMP,
+    last_order TIMESTAMP,
+    PRIMARY KEY (bucket_start, slot)
+);
+
 -- 5. Индексы для улучшения производительности
 CREATE INDEX IF NOT EXISTS idx_orders_product_id ON orders(product_id);
 CREATE INDEX IF NOT EXISTS idx_orders_customer_id ON orders(customer_id);
 CREATE INDEX IF NOT EXISTS idx_orders_status_id ON orders(status_id);
 CREATE INDEX IF NOT EXISTS idx_orders_date ON orders(order_date);
+CREATE INDEX IF NOT EXISTS idx_orders_date_id ON orders(order_date DESC, id DESC);
 CREATE INDEX IF NOT EXISTS idx_products_category ON products(category);
 CREATE INDEX IF NOT EXISTS idx_customers_email ON customers(email);
+CREATE INDEX IF NOT EXISTS idx_inventory_journal_product ON inventory_journal(product_id);
+CREATE INDEX IF NOT EXISTS idx_product_sales_units ON product_sales(units_sold DESC);
 
 -- 6. Заполнение таблицы статусов заказов
 INSERT INTO order_status (name) VALUES
@@ -101,6 +142,28 @@ INSERT INTO orders (product_id, customer_id, status_id, quantity, total_amount)
     (10, 10, 5, 1, 20000.00)
 ON CONFLICT (id) DO NOTHING;
 
+-- 9.1. Заполнение сводки продаж
+INSERT INTO product_sales (product_id, units_sold, revenue)
+SELECT product_id, SUM(quantity), SUM(total_amount)
+FROM orders
+GROUP BY product_id
+ON CONFLICT (product_id) DO NOTHING;
+
+-- 9.2. Заполнение сверток заказов
+INSERT INTO orders_hourly (bucket_start, order_count, revenue, first_order, last_order)
+SELECT date_trunc('hour', order_date), COUNT(*), SUM(total_amount), MIN(order_date), MAX(order_date)
+FROM orders
+WHERE order_date IS NOT NULL
+GROUP BY 1
+ON CONFLICT (bucket_start, slot) DO NOTHING;
+
+INSERT INTO orders_daily (bucket_start, order_count, revenue, first_order, last_order)
+SELECT date_trunc('day', order_date), COUNT(*), SUM(total_amount), MIN(order_date), MAX(order_date)
+FROM orders
+WHERE order_date IS NOT NULL
+GROUP BY 1
+ON CONFLICT (bucket_start, slot) DO NOTHING;
+
 -- Завершаем транзакцию
 COMMIT;
 